@@ -0,0 +1,99 @@
+package org.darwin.denizenAdditions.tags;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-call cost of BinaryTag.encrypt/decrypt on small payloads with one key, comparing a fresh MessageDigest and Cipher per call
+ * (as the tags used to do) with the pooled crypto objects, on pooled platform threads and on a new virtual thread per call.
+ * Run with "gradlew bench".
+ */
+public class BinaryTagEncryptBenchmark {
+
+    private static final String KEY = "benchmark-key";
+
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+
+    private interface Operation {
+        void run(byte[] data) throws Exception;
+    }
+
+    private static byte[] freshEncrypt(byte[] data, String keyValue) throws Exception {
+        MessageDigest sha = MessageDigest.getInstance("SHA-256");
+        byte[] hash = sha.digest(keyValue.getBytes(StandardCharsets.UTF_8));
+        byte[] keyBytes = new byte[16];
+        System.arraycopy(hash, 0, keyBytes, 0, 16);
+        Cipher cipher = Cipher.getInstance("AES/ECB/PKCS5Padding");
+        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(keyBytes, "AES"));
+        return cipher.doFinal(data);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int calls = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        for (int size : new int[] {64, 1024, 16384}) {
+            byte[] data = new byte[size];
+            new Random(size).nextBytes(data);
+            byte[] encrypted = BinaryTagEncrypt.encrypt(data, KEY);
+            System.out.println("Payload " + size + " bytes, " + calls + " calls:");
+            measure("  fresh encrypt, platform threads ", data, calls, false, d -> freshEncrypt(d, KEY));
+            measure("  pooled encrypt, platform threads", data, calls, false, d -> BinaryTagEncrypt.encrypt(d, KEY));
+            measure("  pooled decrypt, platform threads", encrypted, calls, false, d -> BinaryTagEncrypt.decrypt(d, KEY));
+            measure("  fresh encrypt, virtual threads  ", data, calls, true, d -> freshEncrypt(d, KEY));
+            measure("  pooled encrypt, virtual threads ", data, calls, true, d -> BinaryTagEncrypt.encrypt(d, KEY));
+        }
+    }
+
+    private static void measure(String name, byte[] data, int calls, boolean virtual, Operation operation) throws Exception {
+        // Warm up, then measure.
+        run(data, calls / 4, virtual, operation);
+        long start = System.nanoTime();
+        run(data, calls, virtual, operation);
+        long nanos = System.nanoTime() - start;
+        System.out.printf("%s %8.0f ns/call %10.0f calls/s%n", name, (double) nanos / calls, calls * 1e9 / nanos);
+    }
+
+    private static void run(byte[] data, int calls, boolean virtual, Operation operation) throws Exception {
+        if (virtual) {
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int i = 0; i < calls; i++) {
+                    executor.execute(() -> {
+                        try {
+                            operation.run(data);
+                        }
+                        catch (Exception ex) {
+                            throw new IllegalStateException(ex);
+                        }
+                    });
+                }
+            }
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            Future<?>[] futures = new Future<?>[THREADS];
+            for (int thread = 0; thread < THREADS; thread++) {
+                int share = calls / THREADS + (thread < calls % THREADS ? 1 : 0);
+                futures[thread] = executor.submit(() -> {
+                    for (int i = 0; i < share; i++) {
+                        operation.run(data);
+                    }
+                    return null;
+                });
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        finally {
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+}
@@ -6,35 +6,102 @@ import com.denizenscript.denizencore.DenizenCore;
 import com.denizenscript.denizencore.objects.properties.PropertyParser;
 import org.bukkit.Bukkit;
 import org.bukkit.plugin.java.JavaPlugin;
+import org.darwin.denizenAdditions.commands.AdjustSpreadCommand;
+import org.darwin.denizenAdditions.commands.AsyncAdjustCommand;
+import org.darwin.denizenAdditions.commands.AsyncAllCommand;
+import org.darwin.denizenAdditions.commands.AsyncCommand;
+import org.darwin.denizenAdditions.commands.AsyncFileReadCommand;
+import org.darwin.denizenAdditions.commands.AsyncFileWriteCommand;
+import org.darwin.denizenAdditions.commands.AsyncForeachCommand;
+import org.darwin.denizenAdditions.commands.AsyncReceiveCommand;
+import org.darwin.denizenAdditions.commands.AsyncSendCommand;
+import org.darwin.denizenAdditions.commands.EntitySnapshotCommand;
+import org.darwin.denizenAdditions.commands.FileEncryptCommand;
 import org.darwin.denizenAdditions.commands.PlasmoTrackCommand;
+import org.darwin.denizenAdditions.commands.RunAsyncCommand;
 import org.darwin.denizenAdditions.mechanisms.EntitySwingHand;
 import org.darwin.denizenAdditions.mechanisms.PlayerDropSlot;
 import org.darwin.denizenAdditions.properties.EntityFreezeTickingLocked;
 import org.darwin.denizenAdditions.properties.EntityTagOwner;
 import org.darwin.denizenAdditions.properties.EntityTagThrower;
+import org.darwin.denizenAdditions.tags.AsyncStatsTag;
 import org.darwin.denizenAdditions.tags.BinaryTagEncrypt;
 import org.darwin.denizenAdditions.tags.EntityTagPotionEffect;
+import org.darwin.denizenAdditions.tags.EntityTagSnapshot;
 import org.darwin.denizenAdditions.tags.PlayerTagChannels;
+import org.darwin.denizenAdditions.tags.ScriptTagAsyncCounts;
+import org.darwin.denizenAdditions.utilities.AdjustCoalescer;
+import org.darwin.denizenAdditions.utilities.AsyncChannel;
+import org.darwin.denizenAdditions.utilities.AsyncExecutor;
+import org.darwin.denizenAdditions.utilities.ChunkedCipher;
+import org.darwin.denizenAdditions.utilities.CompletionQueue;
+import org.darwin.denizenAdditions.utilities.EntitySnapshots;
+import org.darwin.denizenAdditions.utilities.MechanismSafety;
+import org.darwin.denizenAdditions.utilities.ObjectResolutionCache;
+import org.darwin.denizenAdditions.utilities.TrackCache;
+import org.darwin.denizenAdditions.utilities.TrackStore;
 
 public final class DenizenAdditions extends JavaPlugin {
 
+    public static DenizenAdditions instance;
+
     @Override
     public void onEnable() {
+        instance = this;
+        saveDefaultConfig();
+        AsyncExecutor.configure(getConfig().getConfigurationSection("async"));
+        CompletionQueue.start(this, getConfig().getConfigurationSection("completions"));
+        AdjustCoalescer.start(this);
+        EntitySnapshots.start(this, getConfig().getConfigurationSection("snapshots"));
+        AsyncAdjustCommand.defaultChunkSize = getConfig().getInt("async_adjust.min_chunk_size", 256);
+        MechanismSafety.load(getConfig().getConfigurationSection("async_adjust"));
+        RunAsyncCommand.useVirtualThreads = getConfig().getBoolean("run_async.virtual_threads", false);
+        AdjustSpreadCommand.defaultBudgetMillis = getConfig().getLong("adjust_spread.tick_budget_ms", 5);
+        ObjectResolutionCache.maxSize = getConfig().getInt("async_adjust.resolution_cache_size", 4096);
+        Bukkit.getPluginManager().registerEvents(new ObjectResolutionCache.ReloadListener(), this);
+        AsyncChannel.defaultCapacity = getConfig().getInt("channels.default_capacity", 256);
+        AsyncChannel.defaultTimeoutMillis = Math.max(1, getConfig().getLong("channels.default_timeout_ms", 30000));
+        ChunkedCipher.defaultChunkSize = getConfig().getInt("encryption.chunk_size", 65536);
         BinaryTagEncrypt.register();
         PlayerTagChannels.register();
         EntityTagPotionEffect.register();
+        EntityTagSnapshot.register();
+        AsyncStatsTag.register();
+        ScriptTagAsyncCounts.register();
         PlayerDropSlot.register();
         EntitySwingHand.register();
         PropertyParser.registerProperty(EntityFreezeTickingLocked.class, EntityTag.class);
         PropertyParser.registerProperty(EntityTagThrower.class, EntityTag.class);
         PropertyParser.registerProperty(EntityTagOwner.class, EntityTag.class);
+        DenizenCore.commandRegistry.registerCommand(AsyncCommand.class);
+        DenizenCore.commandRegistry.registerCommand(RunAsyncCommand.class);
+        DenizenCore.commandRegistry.registerCommand(AsyncAdjustCommand.class);
+        DenizenCore.commandRegistry.registerCommand(AdjustSpreadCommand.class);
+        DenizenCore.commandRegistry.registerCommand(AsyncAllCommand.class);
+        DenizenCore.commandRegistry.registerCommand(AsyncForeachCommand.class);
+        DenizenCore.commandRegistry.registerCommand(AsyncSendCommand.class);
+        DenizenCore.commandRegistry.registerCommand(AsyncReceiveCommand.class);
+        DenizenCore.commandRegistry.registerCommand(EntitySnapshotCommand.class);
+        DenizenCore.commandRegistry.registerCommand(FileEncryptCommand.class);
+        DenizenCore.commandRegistry.registerCommand(AsyncFileReadCommand.class);
+        DenizenCore.commandRegistry.registerCommand(AsyncFileWriteCommand.class);
         if (Bukkit.getPluginManager().getPlugin("pv-addon-discs") != null) {
             DenizenCore.commandRegistry.registerCommand(PlasmoTrackCommand.class);
+            PlasmoTrackCommand.resolveManager();
+            TrackCache.configure(getConfig().getConfigurationSection("plasmotrack"));
+            TrackStore.start(getDataFolder(), getConfig().getConfigurationSection("plasmotrack"));
+            PlasmoTrackCommand.defaultParallelism = Math.max(1, getConfig().getInt("plasmotrack.parallelism", 4));
+            Bukkit.getPluginManager().registerEvents(new PlasmoTrackCommand.DiscsPluginListener(), this);
         }
     }
 
     @Override
     public void onDisable() {
+        AsyncExecutor.shutdown();
+        AdjustCoalescer.stop();
+        EntitySnapshots.stop();
+        TrackStore.stop();
+        CompletionQueue.stop();
         Denizen.getInstance().onDisable();
     }
 }
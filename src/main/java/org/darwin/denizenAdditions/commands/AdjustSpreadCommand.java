@@ -0,0 +1,146 @@
+package org.darwin.denizenAdditions.commands;
+
+import com.denizenscript.denizencore.objects.Argument;
+import com.denizenscript.denizencore.objects.ObjectTag;
+import com.denizenscript.denizencore.objects.core.DurationTag;
+import com.denizenscript.denizencore.objects.core.ElementTag;
+import com.denizenscript.denizencore.objects.core.ListTag;
+import com.denizenscript.denizencore.objects.core.MapTag;
+import com.denizenscript.denizencore.scripts.ScriptEntry;
+import com.denizenscript.denizencore.utilities.debugging.Debug;
+import org.bukkit.scheduler.BukkitRunnable;
+import org.darwin.denizenAdditions.DenizenAdditions;
+import org.darwin.denizenAdditions.utilities.MechanismPlan;
+
+public class AdjustSpreadCommand extends AsyncAdjustCommand {
+
+    public AdjustSpreadCommand() {
+        setName("adjust_spread");
+        setSyntax("adjust_spread [<ObjectTag>/def:<name>|...] [<mechanism>](:<value>) (budget:<duration>)");
+        setRequiredArguments(2, 3);
+        isProcedural = false;
+        allowedDynamicPrefixes = true;
+    }
+
+    // <--[command]
+    // @Name adjust_spread
+    // @Syntax adjust_spread [<ObjectTag>/def:<name>|...] [<mechanism>](:<value>) (budget:<duration>)
+    // @Required 2
+    // @Maximum 3
+    // @Short Adjusts a large list of objects over as many ticks as needed.
+    // @Group core
+    //
+    // @Description
+    // Works like the adjust command, but spreads the work over multiple ticks, on the main thread.
+    // Each tick, objects are adjusted until the tick budget is used up, then the rest waits for the next tick.
+    //
+    // Optionally, specify "budget:" to set how much time per tick may be spent (defaults to the "adjust_spread.tick_budget_ms" config value).
+    // At least one object is adjusted per tick, whatever the budget.
+    //
+    // The adjust_spread command is ~waitable. Refer to <@link language ~waitable>.
+    //
+    // @Tags
+    // <entry[saveName].progress> returns the fraction of objects adjusted so far, from 0 to 1.
+    // <entry[saveName].result> returns the adjusted object (when only one object was given).
+    // <entry[saveName].result_list> returns a ListTag of all adjusted objects, in input order.
+    //
+    // @Usage
+    // Use to set thousands of blocks without a lag spike, spending at most 5ms per tick.
+    // - ~adjust_spread <[locations]> block_type:stone budget:5ms
+    // -->
+
+    public static long defaultBudgetMillis = 5;
+
+    @Override
+    protected boolean parseOptionArg(ScriptEntry scriptEntry, Argument arg) {
+        if (!scriptEntry.hasObject("budget")
+                && arg.matchesPrefix("budget")
+                && arg.matchesArgumentType(DurationTag.class)) {
+            scriptEntry.addObject("budget", arg.asType(DurationTag.class));
+            return true;
+        }
+        return false;
+    }
+
+    public class SpreadJob extends BukkitRunnable {
+
+        private final ScriptEntry scriptEntry;
+        private final ListTag objects;
+        private final MechanismPlan plan;
+        private final long budgetNanos;
+        private final ObjectTag[] adjusted;
+        private int index = 0;
+
+        public SpreadJob(ScriptEntry scriptEntry, ListTag objects, MechanismPlan plan, long budgetNanos) {
+            this.scriptEntry = scriptEntry;
+            this.objects = objects;
+            this.plan = plan;
+            this.budgetNanos = budgetNanos;
+            this.adjusted = new ObjectTag[objects.size()];
+        }
+
+        @Override
+        public void run() {
+            if (step()) {
+                cancel();
+            }
+        }
+
+        /**
+         * Adjusts objects until the tick budget is used up, returns true once the whole list is done.
+         */
+        public boolean step() {
+            long start = System.nanoTime();
+            try {
+                while (index < adjusted.length) {
+                    adjusted[index] = applyPlan(objects.getObject(index), plan, scriptEntry, null);
+                    index++;
+                    if (System.nanoTime() - start >= budgetNanos) {
+                        break;
+                    }
+                }
+            }
+            catch (Throwable ex) {
+                Debug.echoError(scriptEntry, "Error in adjust_spread: " + ex.getMessage());
+                Debug.echoError(ex);
+                index = adjusted.length;
+            }
+            scriptEntry.saveObject("progress", new ElementTag(adjusted.length == 0 ? 1 : (double) index / adjusted.length));
+            if (index < adjusted.length) {
+                return false;
+            }
+            ListTag result = new ListTag(adjusted.length);
+            for (ObjectTag object : adjusted) {
+                result.addObject(object);
+            }
+            if (adjusted.length == 1 && adjusted[0] != null) {
+                scriptEntry.saveObject("result", adjusted[0]);
+            }
+            scriptEntry.saveObject("result_list", result);
+            scriptEntry.setFinished(true);
+            return true;
+        }
+    }
+
+    @Override
+    public void execute(ScriptEntry scriptEntry) {
+        ElementTag mechanism = scriptEntry.getElement("mechanism");
+        ObjectTag value = scriptEntry.getObjectTag("mechanism_value");
+        ListTag objects = scriptEntry.getObjectTag("object");
+        MapTag mechanismMap = scriptEntry.getObjectTag("mechanism_map");
+        DurationTag budget = scriptEntry.getObjectTag("budget");
+
+        if (scriptEntry.dbCallShouldDebug()) {
+            Debug.report(scriptEntry, getName(), objects, value, mechanism, mechanismMap, budget);
+        }
+
+        MechanismPlan plan = mechanismMap != null
+                ? MechanismPlan.forEntry(scriptEntry, mechanismMap)
+                : MechanismPlan.forEntry(scriptEntry, mechanism.asString(), value);
+        long budgetMillis = budget != null ? budget.getMillis() : defaultBudgetMillis;
+        SpreadJob job = new SpreadJob(scriptEntry, objects, plan, Math.max(0, budgetMillis) * 1_000_000L);
+        if (!job.step()) {
+            job.runTaskTimer(DenizenAdditions.instance, 1, 1);
+        }
+    }
+}
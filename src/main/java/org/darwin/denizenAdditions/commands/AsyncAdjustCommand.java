@@ -13,30 +13,114 @@ import com.denizenscript.denizencore.scripts.commands.AbstractCommand;
 import com.denizenscript.denizencore.scripts.commands.Holdable;
 import com.denizenscript.denizencore.utilities.CoreUtilities;
 import com.denizenscript.denizencore.utilities.debugging.Debug;
-import com.denizenscript.denizencore.utilities.text.StringHolder;
+import org.bukkit.Bukkit;
+import org.darwin.denizenAdditions.utilities.AdjustCoalescer;
+import org.darwin.denizenAdditions.utilities.AsyncExecutor;
+import org.darwin.denizenAdditions.utilities.CompletionQueue;
+import org.darwin.denizenAdditions.utilities.MechanismPlan;
+import org.darwin.denizenAdditions.utilities.MechanismSafety;
+import org.darwin.denizenAdditions.utilities.ObjectResolutionCache;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RecursiveAction;
 import java.util.function.Consumer;
+import java.util.function.Function;
 
 public class AsyncAdjustCommand extends AbstractCommand implements Holdable {
 
     public AsyncAdjustCommand() {
         setName("async_adjust");
-        setSyntax("async_adjust [<ObjectTag>/def:<name>|...] [<mechanism>](:<value>)");
-        setRequiredArguments(2, 2);
+        setSyntax("async_adjust [<ObjectTag>/def:<name>|...] [<mechanism>](:<value>) (parallel) (chunk_size:<#>) (coalesce)");
+        setRequiredArguments(2, 5);
         isProcedural = true;
         allowedDynamicPrefixes = true;
     }
 
+    // <--[command]
+    // @Name async_adjust
+    // @Syntax async_adjust [<ObjectTag>/def:<name>|...] [<mechanism>](:<value>) (parallel) (chunk_size:<#>) (coalesce)
+    // @Required 2
+    // @Maximum 5
+    // @Short Adjusts objects' mechanisms in a separate thread.
+    // @Group core
+    // @Warning Experimental! Only use with mechanisms known to be thread-safe.
+    //
+    // @Description
+    // Works like the adjust command, but applies the mechanism (or map of mechanisms) from an async worker thread.
+    //
+    // Only async-safe mechanisms are applied on the worker thread. Mechanisms on non-unique objects (items, maps, locations, ...) are async-safe,
+    // while mechanisms on unique objects (entities, players, ...) and unknown mechanisms are main-only.
+    // Main-only adjusts are collected and applied together on the main thread in the next tick, before the command finishes.
+    // Use the "async_adjust.async_safe" and "async_adjust.main_only" config lists to override this for specific mechanisms.
+    //
+    // Optionally, specify "parallel" to split a large list of objects across all worker cores.
+    // The list is split into chunks of at least "chunk_size" objects (defaults to the "async_adjust.min_chunk_size" config value).
+    // Results keep the order of the input list. Lists that adjust definitions (def:<name>) are always adjusted in order on one thread.
+    //
+    // Optionally, specify "coalesce" to merge redundant adjusts of unique objects (entities, players, ...).
+    // All adjusts of unique objects are then held until the end of the tick, keyed by object and mechanism,
+    // and if the same object gets the same mechanism several times within that tick (from any async_adjust using "coalesce"), only the last value is applied.
+    // Adjusts of non-unique objects (items, locations, ...) are never merged, even when equal copies appear several times.
+    // The command finishes after the tick's adjusts have been applied.
+    //
+    // The async_adjust command is ~waitable. Refer to <@link language ~waitable>.
+    //
+    // @Tags
+    // <entry[saveName].result> returns the adjusted object (when only one object was given).
+    // <entry[saveName].result_list> returns a ListTag of all adjusted objects, in input order.
+    //
+    // @Usage
+    // Use to set the lore of thousands of items using every core.
+    // - ~async_adjust <[items]> lore:<[lore]> parallel save:adjusted
+    //
+    // @Usage
+    // Use to set the thrower of dropped items, skipping repeated writes within the same tick.
+    // - async_adjust <[dropped_items]> thrower:<player> coalesce
+    // -->
+
+    public static int defaultChunkSize = 256;
+
     @Override
     public void addCustomTabCompletions(TabCompletionsBuilder tab) {
         tab.add(PropertyParser.allMechanismsEver);
     }
 
+    /**
+     * Handles the command's option arguments (after the object), returns true if the argument was one of them.
+     */
+    protected boolean parseOptionArg(ScriptEntry scriptEntry, Argument arg) {
+        if (!scriptEntry.hasObject("parallel")
+                && arg.matches("parallel")) {
+            scriptEntry.addObject("parallel", new ElementTag(true));
+            return true;
+        }
+        else if (!scriptEntry.hasObject("coalesce")
+                && arg.matches("coalesce")) {
+            scriptEntry.addObject("coalesce", new ElementTag(true));
+            return true;
+        }
+        else if (!scriptEntry.hasObject("chunk_size")
+                && arg.matchesPrefix("chunk_size")
+                && arg.matchesInteger()) {
+            scriptEntry.addObject("chunk_size", arg.asElement());
+            return true;
+        }
+        return false;
+    }
+
     @Override
     public void parseArgs(ScriptEntry scriptEntry) throws InvalidArgumentsException {
         for (Argument arg : scriptEntry) {
+            if (scriptEntry.hasObject("object")
+                    && parseOptionArg(scriptEntry, arg)) {
+                continue;
+            }
             if (!scriptEntry.hasObject("object")) {
                 if (arg.object instanceof ListTag) {
                     scriptEntry.addObject("object", arg.object);
@@ -75,28 +159,165 @@ public class AsyncAdjustCommand extends AbstractCommand implements Holdable {
 
     public static HashMap<String, Consumer<Mechanism>> specialAdjustables = new HashMap<>();
 
+    public static class AdjustRange extends RecursiveAction {
+
+        private final List<ObjectTag> source;
+        private final ObjectTag[] results;
+        private final int from, to, chunkSize;
+        private final Function<ObjectTag, ObjectTag> adjuster;
+
+        public AdjustRange(List<ObjectTag> source, ObjectTag[] results, int from, int to, int chunkSize, Function<ObjectTag, ObjectTag> adjuster) {
+            this.source = source;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+            this.chunkSize = chunkSize;
+            this.adjuster = adjuster;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= chunkSize) {
+                for (int i = from; i < to; i++) {
+                    results[i] = adjuster.apply(source.get(i));
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new AdjustRange(source, results, from, middle, chunkSize, adjuster),
+                    new AdjustRange(source, results, middle, to, chunkSize, adjuster));
+        }
+    }
+
+    private static boolean adjustsDefinitions(ListTag objects) {
+        for (ObjectTag object : objects.objectForms) {
+            if (object instanceof ElementTag && CoreUtilities.toLowerCase(object.toString()).startsWith("def:")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Collects the main-only adjusts of one async_adjust run, to be applied together on the main thread.
+     * Once an object has a deferred adjust, every later adjust of that object is deferred too, to keep mechanism order.
+     */
+    public static class MainThreadAdjusts {
+
+        /**
+         * If true, unique objects are always deferred, and their deferred adjusts go through the AdjustCoalescer instead of this batch.
+         * Non-unique objects are never coalesced, as equal copies share an identity but are separate objects.
+         */
+        public final boolean coalesce;
+
+        private final ConcurrentLinkedQueue<Runnable> pending = new ConcurrentLinkedQueue<>();
+
+        private final Set<ObjectTag> deferredObjects = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+
+        public MainThreadAdjusts(boolean coalesce) {
+            this.coalesce = coalesce;
+        }
+
+        /**
+         * 'coalescable' is whether the target is unique server state (a unique object, or a special adjustable like 'server'), identified by 'identity'.
+         */
+        public void defer(ObjectTag object, boolean coalescable, String identity, String mechanism, Runnable adjust) {
+            deferredObjects.add(object);
+            if (coalesce && coalescable) {
+                AdjustCoalescer.submit(identity, mechanism, adjust);
+                return;
+            }
+            pending.add(adjust);
+        }
+
+        public boolean isDeferred(ObjectTag object) {
+            return deferredObjects.contains(object);
+        }
+
+        public boolean isEmpty() {
+            return pending.isEmpty();
+        }
+
+        /**
+         * Hands every collected adjust to the CompletionQueue as its own action, in order, so they're spread by its tick budget.
+         */
+        public void submitAll() {
+            Runnable adjust;
+            while ((adjust = pending.poll()) != null) {
+                CompletionQueue.submit(adjust);
+            }
+        }
+    }
+
     public ObjectTag adjust(ObjectTag object, String mechanismName, ObjectTag value, ScriptEntry entry) {
+        return adjust(object, mechanismName, value, entry, null);
+    }
+
+    public ObjectTag adjust(ObjectTag object, String mechanismName, ObjectTag value, ScriptEntry entry, MainThreadAdjusts mainThreadAdjusts) {
         Mechanism mechanism = new Mechanism(mechanismName, value, entry.entryData.getTagContext());
-        return adjust(object, mechanism, entry);
+        return adjust(object, mechanism, entry, mainThreadAdjusts);
     }
 
     public ObjectTag adjust(ObjectTag object, Mechanism mechanism, ScriptEntry entry) {
+        return adjust(object, mechanism, entry, null);
+    }
+
+    public ObjectTag adjust(ObjectTag object, Mechanism mechanism, ScriptEntry entry, MainThreadAdjusts mainThreadAdjusts) {
+        return adjust(object, mechanism, entry, mainThreadAdjusts, null);
+    }
+
+    /**
+     * Applies every step of the plan to the object, in order.
+     */
+    public ObjectTag applyPlan(ObjectTag object, MechanismPlan plan, ScriptEntry entry, MainThreadAdjusts mainThreadAdjusts) {
+        for (int i = 0; i < plan.steps.length; i++) {
+            MechanismPlan.Step step = plan.steps[i];
+            // Only the first step copies a non-unique object: later steps must adjust that same copy, or they'd miss adjusts deferred on it.
+            object = adjust(object, new Mechanism(step.name, plan.values[i], plan.context), entry, mainThreadAdjusts, step, i > 0);
+        }
+        return object;
+    }
+
+    private static boolean isAsyncSafe(Mechanism mechanism, MechanismPlan.Step step, boolean unique) {
+        return step != null ? step.isAsyncSafe(unique) : MechanismSafety.isAsyncSafe(mechanism.getName(), unique);
+    }
+
+    private static void adjustSpecial(String name, Consumer<Mechanism> specialAdjustable, Mechanism mechanism) {
+        mechanism.adjusting = null;
+        mechanism.isProperty = false;
+        if (mechanism.shouldDebug()) {
+            Debug.echoDebug(mechanism.context, "Adjust mechanism '" + mechanism.getName() + "' on special adjustable '" + name + "'...");
+        }
+        specialAdjustable.accept(mechanism);
+        mechanism.autoReport();
+    }
+
+    /**
+     * Adjusts the object. If 'mainThreadAdjusts' is given, mechanisms that aren't async-safe are deferred into it instead of being applied in place.
+     */
+    public ObjectTag adjust(ObjectTag object, Mechanism mechanism, ScriptEntry entry, MainThreadAdjusts mainThreadAdjusts, MechanismPlan.Step step) {
+        return adjust(object, mechanism, entry, mainThreadAdjusts, step, false);
+    }
+
+    /**
+     * As above. If 'copied' is true, the object is already this run's own copy, so non-unique objects are adjusted in place instead of being copied again.
+     */
+    private ObjectTag adjust(ObjectTag object, Mechanism mechanism, ScriptEntry entry, MainThreadAdjusts mainThreadAdjusts, MechanismPlan.Step step, boolean copied) {
         if (object == null) {
             Debug.echoError("Cannot adjust null object.");
             return null;
         }
+        boolean needsCopy = !copied;
         if (object instanceof ElementTag) {
             String objectString = object.toString();
             String lowerObjectString = CoreUtilities.toLowerCase(objectString);
             Consumer<Mechanism> specialAdjustable = specialAdjustables.get(lowerObjectString);
             if (specialAdjustable != null) {
-                mechanism.adjusting = null;
-                mechanism.isProperty = false;
-                if (mechanism.shouldDebug()) {
-                    Debug.echoDebug(mechanism.context, "Adjust mechanism '" + mechanism.getName() + "' on special adjustable '" + lowerObjectString + "'...");
+                if (mainThreadAdjusts != null && !isAsyncSafe(mechanism, step, true)) {
+                    mainThreadAdjusts.defer(object, true, lowerObjectString, mechanism.getName(), () -> adjustSpecial(lowerObjectString, specialAdjustable, mechanism));
+                    return object;
                 }
-                specialAdjustable.accept(mechanism);
-                mechanism.autoReport();
+                adjustSpecial(lowerObjectString, specialAdjustable, mechanism);
                 return object;
             }
             if (lowerObjectString.startsWith("def:")) {
@@ -106,11 +327,13 @@ public class AsyncAdjustCommand extends AbstractCommand implements Holdable {
                     Debug.echoError("Invalid definition name '" + defName + "', cannot adjust");
                     return object;
                 }
-                def = adjust(def, mechanism, entry);
+                def = adjust(def, mechanism, entry, mainThreadAdjusts, step, copied);
                 entry.getResidingQueue().addDefinition(defName, def);
                 return def;
             }
-            object = ObjectFetcher.pickObjectFor(objectString, entry.context);
+            object = ObjectResolutionCache.pick(objectString, entry.context);
+            // Cached objects are shared prototypes, so they're always copied below.
+            needsCopy = true;
             if (object instanceof ElementTag) {
                 FlaggableObject altObject = DenizenCore.implementation.simpleWordToFlaggable(objectString, entry);
                 if (altObject == null || (altObject instanceof ElementTag)) {
@@ -121,10 +344,11 @@ public class AsyncAdjustCommand extends AbstractCommand implements Holdable {
             }
         }
         if (object instanceof ListTag subList) {
-            return new ListTag(subList.objectForms, obj -> adjust(obj, mechanism, entry));
+            boolean elementsCopied = !needsCopy;
+            return new ListTag(subList.objectForms, obj -> adjust(obj, mechanism, entry, mainThreadAdjusts, step, elementsCopied));
         }
-        if (!object.isUnique()) {
-            object = ObjectFetcher.pickObjectFor(object.identify(), mechanism.context);
+        if (needsCopy && !object.isUnique()) {
+            object = object.duplicate();
         }
         if (!(object instanceof Adjustable)) {
             Debug.echoError("'" + object + "' is not an adjustable object type.");
@@ -134,6 +358,14 @@ public class AsyncAdjustCommand extends AbstractCommand implements Holdable {
             Debug.echoError("Cannot adjust a unique object within a procedural queue.");
             return null;
         }
+        if (mainThreadAdjusts != null
+                && (mainThreadAdjusts.isDeferred(object)
+                    || !isAsyncSafe(mechanism, step, object.isUnique())
+                    || (mainThreadAdjusts.coalesce && object.isUnique()))) {
+            Adjustable adjustable = (Adjustable) object;
+            mainThreadAdjusts.defer(object, object.isUnique(), object.identify(), mechanism.getName(), () -> adjustable.safeAdjust(mechanism));
+            return object;
+        }
         ((Adjustable) object).safeAdjust(mechanism);
         return object;
     }
@@ -144,39 +376,62 @@ public class AsyncAdjustCommand extends AbstractCommand implements Holdable {
         ObjectTag value = scriptEntry.getObjectTag("mechanism_value");
         ListTag objects = scriptEntry.getObjectTag("object");
         MapTag mechanismMap = scriptEntry.getObjectTag("mechanism_map");
+        boolean parallel = scriptEntry.hasObject("parallel");
+        boolean coalesce = scriptEntry.hasObject("coalesce");
+        ElementTag chunkSizeElement = scriptEntry.getElement("chunk_size");
+        int chunkSize = Math.max(1, chunkSizeElement != null ? chunkSizeElement.asInt() : defaultChunkSize);
 
         if (scriptEntry.dbCallShouldDebug()) {
-            Debug.report(scriptEntry, getName(), objects, value, mechanism, mechanismMap);
+            Debug.report(scriptEntry, getName(), objects, value, mechanism, mechanismMap, chunkSizeElement, parallel ? new ElementTag("parallel") : null, coalesce ? new ElementTag("coalesce") : null);
         }
 
-        DenizenCore.runAsync(() -> {
+        MechanismPlan plan = mechanismMap != null
+                ? MechanismPlan.forEntry(scriptEntry, mechanismMap)
+                : MechanismPlan.forEntry(scriptEntry, mechanism.asString(), value);
+
+        AsyncExecutor.submit(scriptEntry, getName(), () -> {
+            Map<String, ObjectTag> saved = new HashMap<>();
+            MainThreadAdjusts mainThreadAdjusts = coalesce ? new MainThreadAdjusts(true)
+                    : Bukkit.isPrimaryThread() ? null : new MainThreadAdjusts(false);
             try {
-                ListTag result = new ListTag(objects.size());
-                for (ObjectTag object : objects.objectForms) {
-                    if (mechanismMap != null) {
-                        for (Map.Entry<StringHolder, ObjectTag> entry : mechanismMap.entrySet()) {
-                            object = adjust(object, entry.getKey().str, entry.getValue(), scriptEntry);
-                        }
-                    }
-                    else {
-                        object = adjust(object, mechanism.asString(), value, scriptEntry);
-                    }
-                    if (objects.size() == 1) {
-                        scriptEntry.saveObject("result", object);
+                Function<ObjectTag, ObjectTag> adjuster = object -> applyPlan(object, plan, scriptEntry, mainThreadAdjusts);
+                ObjectTag[] adjusted = new ObjectTag[objects.size()];
+                if (parallel && objects.size() > chunkSize && !adjustsDefinitions(objects)) {
+                    AsyncExecutor.getForkJoinPool().invoke(new AdjustRange(objects.objectForms, adjusted, 0, adjusted.length, chunkSize, adjuster));
+                }
+                else {
+                    for (int i = 0; i < adjusted.length; i++) {
+                        adjusted[i] = adjuster.apply(objects.getObject(i));
                     }
+                }
+                ListTag result = new ListTag(adjusted.length);
+                for (ObjectTag object : adjusted) {
                     result.addObject(object);
                 }
-                scriptEntry.saveObject("result_list", result);
+                if (adjusted.length == 1 && adjusted[0] != null) {
+                    saved.put("result", adjusted[0]);
+                }
+                saved.put("result_list", result);
             }
             catch (Throwable ex) {
                 Debug.echoError(scriptEntry, "Error in async_adjust: " + ex.getMessage());
                 Debug.echoError(ex);
             }
             finally {
-                if (scriptEntry.shouldWaitFor()) {
-                    DenizenCore.runOnMainThread(() -> scriptEntry.setFinished(true));
+                if (coalesce) {
+                    // Non-unique adjusts are batched as without "coalesce", and go after the tick's coalesced adjusts.
+                    AdjustCoalescer.afterFlush(() -> {
+                        mainThreadAdjusts.submitAll();
+                        CompletionQueue.complete(scriptEntry, saved);
+                    });
+                }
+                else {
+                    if (mainThreadAdjusts != null && !mainThreadAdjusts.isEmpty()) {
+                        mainThreadAdjusts.submitAll();
+                    }
+                    CompletionQueue.complete(scriptEntry, saved);
                 }
             }
-        });
+        }, () -> CompletionQueue.complete(scriptEntry));
     }
 }
@@ -0,0 +1,309 @@
+package org.darwin.denizenAdditions.commands;
+
+import com.denizenscript.denizencore.exceptions.InvalidArgumentsException;
+import com.denizenscript.denizencore.objects.Argument;
+import com.denizenscript.denizencore.objects.ObjectTag;
+import com.denizenscript.denizencore.objects.core.ElementTag;
+import com.denizenscript.denizencore.objects.core.ListTag;
+import com.denizenscript.denizencore.objects.core.MapTag;
+import com.denizenscript.denizencore.objects.core.ScriptTag;
+import com.denizenscript.denizencore.scripts.ScriptEntry;
+import com.denizenscript.denizencore.scripts.commands.BracedCommand;
+import com.denizenscript.denizencore.scripts.commands.Holdable;
+import com.denizenscript.denizencore.scripts.queues.ScriptQueue;
+import com.denizenscript.denizencore.utilities.debugging.Debug;
+import com.denizenscript.denizencore.utilities.text.StringHolder;
+import org.darwin.denizenAdditions.utilities.AsyncBlockTemplate;
+import org.darwin.denizenAdditions.utilities.AsyncExecutor;
+import org.darwin.denizenAdditions.utilities.AsyncQueue;
+import org.darwin.denizenAdditions.utilities.CompletionQueue;
+import org.darwin.denizenAdditions.utilities.CopyOnWriteDefinitions;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+public class AsyncAllCommand extends BracedCommand implements Holdable {
+
+    public AsyncAllCommand() {
+        setName("async_all");
+        setSyntax("async_all (scripts:<script>|...) (def:<element>|.../defmap:<map>) (mode:{all}/first) ([<commands>])");
+        setRequiredArguments(0, 5);
+        isProcedural = true;
+    }
+
+    // <--[command]
+    // @Name async_all
+    // @Syntax async_all (scripts:<script>|...) (def:<element>|.../defmap:<map>) (mode:{all}/first) ([<commands>])
+    // @Required 0
+    // @Maximum 5
+    // @Short Runs several scripts or commands in parallel, and waits for all of them (or the first one).
+    // @Group queue
+    // @Warning Experimental! Use only with commands known to be thread-safe.
+    //
+    // @Description
+    // Starts every child at once on the async workers, then joins them.
+    // Children are the scripts given in "scripts:", followed by every top-level command of the following block (each command is its own child).
+    // To run several commands in one child, put them in a script, or in a single braced command within the block.
+    //
+    // Scripts receive the "def:" and "defmap:" definitions like with run_async. Block commands inherit the current queue's definitions and context.
+    //
+    // With "mode:all" (the default) the command finishes once every child has finished.
+    // With "mode:first" it finishes as soon as one child finishes, and the other children are cancelled.
+    // If a child fails (its start throws, it's dropped by the async workers, or it's cancelled, e.g. by a timeout), the remaining children are cancelled and the command finishes right away.
+    // Cancelled children stop before their next command; a command that's already running isn't interrupted.
+    //
+    // The result of a script child is what it determined (a list if it determined more than once, an empty element if it didn't determine).
+    // The result of a block child is a map of the definitions it created or changed.
+    //
+    // The async_all command is ~waitable. Refer to <@link language ~waitable>. Results are only saved when waited for.
+    //
+    // @Tags
+    // <entry[saveName].results> returns a ListTag of each child's result, in child order. Children that were cancelled or failed are left out.
+    // <entry[saveName].result_map> returns a MapTag of child to result, keyed by script name (or by index, starting at 1, for block children and repeated scripts; an index that's already a key gets a "_2" suffix).
+    // <entry[saveName].winner> returns the key of the child that finished first, in "mode:first".
+    // <entry[saveName].failed> returns whether any child failed.
+    //
+    // @Usage
+    // Use to run three lookups at the same time and use all of their results.
+    // - ~async_all scripts:lookup_a|lookup_b|lookup_c def:<player> save:lookups
+    // - narrate <entry[lookups].result_map>
+    //
+    // @Usage
+    // Use to ask two mirrors and keep whichever answers first.
+    // - ~async_all scripts:mirror_eu|mirror_us mode:first save:fastest
+    // - narrate "<entry[fastest].winner> answered: <entry[fastest].results.first>"
+    //
+    // @Usage
+    // Use to compute two values in parallel, each in its own child.
+    // - ~async_all save:values:
+    //   - define sum <[numbers].sum>
+    //   - define sorted <[numbers].sort_by_number>
+    // - narrate <entry[values].result_map>
+    // -->
+
+    public enum Mode { ALL, FIRST }
+
+    @Override
+    public void parseArgs(ScriptEntry scriptEntry) throws InvalidArgumentsException {
+        for (Argument arg : scriptEntry) {
+            if (!scriptEntry.hasObject("scripts")
+                    && arg.matchesPrefix("scripts")) {
+                scriptEntry.addObject("scripts", arg.asType(ListTag.class));
+            }
+            else if (!scriptEntry.hasObject("definitions")
+                    && arg.matchesPrefix("def")) {
+                scriptEntry.addObject("definitions", arg.asType(ListTag.class));
+            }
+            else if (!scriptEntry.hasObject("def_map")
+                    && arg.matchesPrefix("defmap")
+                    && arg.matchesArgumentType(MapTag.class)) {
+                scriptEntry.addObject("def_map", arg.asType(MapTag.class));
+            }
+            else if (!scriptEntry.hasObject("mode")
+                    && arg.matchesPrefix("mode")
+                    && arg.matchesEnum(Mode.class)) {
+                scriptEntry.addObject("mode", arg.asElement());
+            }
+            else if (arg.matches("{")) {
+                break;
+            }
+            else {
+                arg.reportUnhandled();
+            }
+        }
+        AsyncBlockTemplate template = AsyncBlockTemplate.forEntry(scriptEntry);
+        if (template != null) {
+            scriptEntry.addObject("template", template);
+        }
+        if (!scriptEntry.hasObject("scripts") && template == null) {
+            throw new InvalidArgumentsException("Must specify scripts to run, or a block of commands.");
+        }
+        scriptEntry.defaultObject("mode", new ElementTag("all"));
+    }
+
+    private static class Join {
+
+        final ScriptEntry entry;
+        final boolean first;
+        final String[] keys;
+        final AsyncQueue[] queues;
+        final AtomicReferenceArray<ObjectTag> results;
+        final AtomicInteger remaining;
+        final AtomicBoolean done = new AtomicBoolean(false);
+
+        Join(ScriptEntry entry, boolean first, String[] keys, AsyncQueue[] queues) {
+            this.entry = entry;
+            this.first = first;
+            this.keys = keys;
+            this.queues = queues;
+            this.results = new AtomicReferenceArray<>(queues.length);
+            this.remaining = new AtomicInteger(queues.length);
+        }
+
+        void finished(int index, ObjectTag result) {
+            // Once the join is done, the children it cancelled are ignored. Before that, a cancelled child (e.g. timed out) failed.
+            if (queues[index].isCancelled()) {
+                failed();
+                return;
+            }
+            results.set(index, result);
+            if (first) {
+                finish(keys[index], false);
+            }
+            else if (remaining.decrementAndGet() == 0) {
+                finish(null, false);
+            }
+        }
+
+        void failed() {
+            finish(null, true);
+        }
+
+        private void finish(String winner, boolean failed) {
+            if (!done.compareAndSet(false, true)) {
+                return;
+            }
+            for (AsyncQueue queue : queues) {
+                queue.cancel();
+            }
+            if (!entry.shouldWaitFor()) {
+                return;
+            }
+            ListTag resultList = new ListTag();
+            MapTag resultMap = new MapTag();
+            for (int i = 0; i < queues.length; i++) {
+                ObjectTag result = results.get(i);
+                if (result != null) {
+                    resultList.addObject(result);
+                    resultMap.putObject(keys[i], result);
+                }
+            }
+            Map<String, ObjectTag> saved = new HashMap<>();
+            saved.put("results", resultList);
+            saved.put("result_map", resultMap);
+            saved.put("failed", new ElementTag(failed));
+            if (winner != null) {
+                saved.put("winner", new ElementTag(winner));
+            }
+            CompletionQueue.complete(entry, saved);
+        }
+    }
+
+    @Override
+    public void execute(ScriptEntry scriptEntry) {
+        ListTag scripts = scriptEntry.getObjectTag("scripts");
+        ListTag definitions = scriptEntry.getObjectTag("definitions");
+        MapTag defMap = scriptEntry.getObjectTag("def_map");
+        ElementTag mode = scriptEntry.getElement("mode");
+        AsyncBlockTemplate template = (AsyncBlockTemplate) scriptEntry.getObject("template");
+
+        if (scriptEntry.dbCallShouldDebug()) {
+            Debug.report(scriptEntry, getName(), scripts, definitions, defMap, mode);
+        }
+
+        ScriptQueue parentQueue = scriptEntry.getResidingQueue();
+        List<AsyncQueue> queues = new ArrayList<>();
+        List<String> keys = new ArrayList<>();
+        List<Boolean> isScript = new ArrayList<>();
+        // The definitions each block child started with, to tell which ones it changed.
+        List<Map<StringHolder, ObjectTag>> startDefinitions = new ArrayList<>();
+        Set<String> usedKeys = new HashSet<>();
+        if (scripts != null) {
+            for (ScriptTag script : scripts.filter(ScriptTag.class, scriptEntry)) {
+                AsyncQueue queue = AsyncQueue.forScript(script, null, scriptEntry.entryData, definitions, AsyncQueue.nextId("ASYNC_ALL"));
+                if (defMap != null) {
+                    CopyOnWriteDefinitions.shareInto(defMap, queue.getAllDefinitions());
+                }
+                keys.add(uniqueKey(usedKeys, script.getName(), keys.size() + 1));
+                queues.add(queue);
+                isScript.add(true);
+                startDefinitions.add(null);
+            }
+        }
+        if (template != null) {
+            for (int i = 0; i < template.size(); i++) {
+                AsyncQueue queue = new AsyncQueue(AsyncQueue.nextId("ASYNC_ALL"));
+                queue.addEntries(List.of(template.instantiate(scriptEntry, queue, i)));
+                Map<StringHolder, ObjectTag> shared = Collections.emptyMap();
+                if (parentQueue != null) {
+                    shared = CopyOnWriteDefinitions.shareInto(parentQueue.getAllDefinitions(), queue.getAllDefinitions());
+                    queue.setContextSource(parentQueue.contextSource);
+                }
+                keys.add(uniqueKey(usedKeys, null, keys.size() + 1));
+                queues.add(queue);
+                isScript.add(false);
+                startDefinitions.add(shared);
+            }
+        }
+        if (queues.isEmpty()) {
+            scriptEntry.saveObject("results", new ListTag());
+            scriptEntry.saveObject("result_map", new MapTag());
+            scriptEntry.saveObject("failed", new ElementTag(false));
+            scriptEntry.setFinished(true);
+            return;
+        }
+        if (!scriptEntry.shouldWaitFor()) {
+            scriptEntry.setFinished(true);
+        }
+
+        Join join = new Join(scriptEntry, mode.asString().equalsIgnoreCase("first"), keys.toArray(new String[0]), queues.toArray(new AsyncQueue[0]));
+        for (int i = 0; i < queues.size(); i++) {
+            int index = i;
+            AsyncQueue queue = queues.get(i);
+            boolean script = isScript.get(i);
+            Map<StringHolder, ObjectTag> started = startDefinitions.get(i);
+            queue.procedural = parentQueue != null && parentQueue.procedural;
+            queue.callBack(() -> join.finished(index, script ? determinedResult(queue) : changedDefinitions(queue, started)));
+            AsyncExecutor.submit(scriptEntry, getName(), () -> {
+                try {
+                    queue.start(true);
+                }
+                catch (Throwable ex) {
+                    Debug.echoError("Error in async_all child '" + join.keys[index] + "': " + ex.getMessage());
+                    Debug.echoError(ex);
+                    join.failed();
+                }
+            }, join::failed);
+        }
+    }
+
+    /**
+     * Returns the wanted key if it's free, else the child's index, with a "_2", "_3"... suffix if even that is taken (e.g. by a script named "2").
+     */
+    private static String uniqueKey(Set<String> used, String wanted, int index) {
+        if (wanted != null && used.add(wanted)) {
+            return wanted;
+        }
+        String key = String.valueOf(index);
+        for (int suffix = 2; !used.add(key); suffix++) {
+            key = index + "_" + suffix;
+        }
+        return key;
+    }
+
+    private static ObjectTag determinedResult(ScriptQueue queue) {
+        ListTag determinations = queue.determinations;
+        if (determinations == null || determinations.isEmpty()) {
+            return new ElementTag("");
+        }
+        return determinations.size() == 1 ? determinations.getObject(0) : determinations;
+    }
+
+    private static MapTag changedDefinitions(ScriptQueue queue, Map<StringHolder, ObjectTag> started) {
+        MapTag changed = new MapTag();
+        for (Map.Entry<StringHolder, ObjectTag> definition : queue.getAllDefinitions().entrySet()) {
+            if (started.get(definition.getKey()) != definition.getValue()) {
+                changed.putObject(definition.getKey().str, definition.getValue());
+            }
+        }
+        return changed;
+    }
+}
@@ -1,17 +1,22 @@
 package org.darwin.denizenAdditions.commands;
 
-import com.denizenscript.denizencore.DenizenCore;
 import com.denizenscript.denizencore.exceptions.InvalidArgumentsException;
+import com.denizenscript.denizencore.objects.Argument;
+import com.denizenscript.denizencore.objects.core.DurationTag;
+import com.denizenscript.denizencore.objects.core.ElementTag;
 import com.denizenscript.denizencore.objects.core.QueueTag;
 import com.denizenscript.denizencore.scripts.ScriptEntry;
 import com.denizenscript.denizencore.scripts.commands.BracedCommand;
 import com.denizenscript.denizencore.scripts.commands.Holdable;
 import com.denizenscript.denizencore.scripts.queues.ScriptQueue;
-import com.denizenscript.denizencore.scripts.queues.core.InstantQueue;
 import com.denizenscript.denizencore.utilities.debugging.Debug;
+import org.darwin.denizenAdditions.utilities.AsyncBlockTemplate;
+import org.darwin.denizenAdditions.utilities.AsyncExecutor;
+import org.darwin.denizenAdditions.utilities.AsyncQueue;
+import org.darwin.denizenAdditions.utilities.CompletionQueue;
+import org.darwin.denizenAdditions.utilities.CopyOnWriteDefinitions;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
 
 public class AsyncCommand extends BracedCommand implements Holdable {
@@ -20,16 +25,16 @@ public class AsyncCommand extends BracedCommand implements Holdable {
 
     public AsyncCommand() {
         setName("async");
-        setSyntax("async [<commands>]");
-        setRequiredArguments(0, 1);
+        setSyntax("async (timeout:<duration>) [<commands>]");
+        setRequiredArguments(0, 2);
         isProcedural = true;
     }
 
     // <--[command]
     // @Name Async
-    // @Syntax async [<commands>]
+    // @Syntax async (timeout:<duration>) [<commands>]
     // @Required 0
-    // @Maximum 1
+    // @Maximum 2
     // @Short Runs commands asynchronously (in a separate thread).
     // @Group queue
     // @Warning Experimental! Use only with commands known to be thread-safe.
@@ -37,68 +42,88 @@ public class AsyncCommand extends BracedCommand implements Holdable {
     // Runs all commands inside the following block asynchronously in a worker thread.
     // The block inherits definitions and context from the current queue.
     // If the calling entry used ~waitable, the parent entry will wait until the async block finishes.
+    //
+    // Optionally, specify "timeout:<duration>" to stop the block once it has run for that long.
+    // The block is stopped before its next command, and the worker thread is interrupted so blocking calls give up.
+    //
+    // @Tags
+    // <entry[saveName].created_queue> returns the queue running the block.
+    // <entry[saveName].timed_out> returns whether the block was stopped by its timeout (only when waited for).
+    //
+    // @Usage
+    // Use to give a slow block at most 10 seconds.
+    // - ~async timeout:10s save:work:
+    //   - ...
+    // - if <entry[work].timed_out>:
+    //   - narrate "Took too long!"
     // -->
 
     @Override
     public void parseArgs(ScriptEntry scriptEntry) throws InvalidArgumentsException {
-        List<BracedData> bdat = getBracedCommands(scriptEntry);
-        if (bdat != null && !bdat.isEmpty()) {
-            scriptEntry.addObject("braces", bdat);
+        for (Argument arg : scriptEntry) {
+            if (!scriptEntry.hasObject("timeout")
+                    && arg.matchesPrefix("timeout")
+                    && arg.matchesArgumentType(DurationTag.class)) {
+                scriptEntry.addObject("timeout", arg.asType(DurationTag.class));
+            }
+            else if (arg.matches("{")) {
+                break;
+            }
+            else {
+                arg.reportUnhandled();
+            }
+        }
+        AsyncBlockTemplate template = AsyncBlockTemplate.forEntry(scriptEntry);
+        if (template != null) {
+            scriptEntry.addObject("template", template);
         }
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     public void execute(ScriptEntry scriptEntry) {
-        List<BracedData> braces = (List<BracedData>) scriptEntry.getObject("braces");
-        if (braces == null || braces.isEmpty()) {
+        AsyncBlockTemplate template = (AsyncBlockTemplate) scriptEntry.getObject("template");
+        if (template == null) {
             Debug.echoError(scriptEntry, "Async command requires a following block of commands.");
             scriptEntry.setFinished(true);
             return;
         }
 
-        List<ScriptEntry> innerEntries = braces.getFirst().value;
-
+        DurationTag timeout = scriptEntry.getObjectTag("timeout");
         String queueId = "ASYNC_BLOCK_" + Long.toHexString(ID_COUNTER.getAndIncrement());
-        InstantQueue queue = new InstantQueue(queueId);
-
-        List<ScriptEntry> cleanedEntries = new ArrayList<>();
-        for (ScriptEntry entry : innerEntries) {
-            ScriptEntry newEntry = entry.clone();
-            newEntry.queue = queue;
-            newEntry.entryData = (scriptEntry.entryData == null)
-                    ? DenizenCore.implementation.getEmptyScriptEntryData()
-                    : scriptEntry.entryData.clone();
-            newEntry.entryData.scriptEntry = newEntry;
-            newEntry.updateContext();
-            cleanedEntries.add(newEntry);
+        AsyncQueue queue = new AsyncQueue(queueId);
+        queue.addEntries(template.instantiate(scriptEntry, queue));
+        if (timeout != null) {
+            queue.setTimeout(timeout.getMillis());
         }
-        queue.addEntries(cleanedEntries);
 
         ScriptQueue parentQueue = scriptEntry.getResidingQueue();
         if (parentQueue != null) {
-            queue.getAllDefinitions().putAll(parentQueue.getAllDefinitions());
+            CopyOnWriteDefinitions.shareInto(parentQueue.getAllDefinitions(), queue.getAllDefinitions());
             queue.setContextSource(parentQueue.contextSource);
         }
 
         if (scriptEntry.shouldWaitFor()) {
-            queue.callBack(() -> DenizenCore.runOnMainThread(() -> scriptEntry.setFinished(true)));
+            queue.callBack(() -> CompletionQueue.complete(scriptEntry, Map.of("timed_out", new ElementTag(queue.isTimedOut()))));
         } else {
             scriptEntry.setFinished(true);
         }
 
         scriptEntry.addObject("created_queue", new QueueTag(queue));
 
-        DenizenCore.runAsync(() -> {
+        AsyncExecutor.submit(scriptEntry, getName(), () -> {
             try {
                 queue.start(true);
             } catch (Throwable ex) {
                 Debug.echoError("Error in async block: " + ex.getMessage());
                 Debug.echoError(ex);
                 if (scriptEntry.shouldWaitFor()) {
-                    DenizenCore.runOnMainThread(() -> scriptEntry.setFinished(true));
+                    CompletionQueue.complete(scriptEntry);
                 }
             }
+        }, () -> {
+            if (scriptEntry.shouldWaitFor()) {
+                CompletionQueue.complete(scriptEntry);
+            }
         });
     }
 }
@@ -0,0 +1,145 @@
+package org.darwin.denizenAdditions.commands;
+
+import com.denizenscript.denizen.Denizen;
+import com.denizenscript.denizen.utilities.Utilities;
+import com.denizenscript.denizencore.exceptions.InvalidArgumentsException;
+import com.denizenscript.denizencore.objects.Argument;
+import com.denizenscript.denizencore.objects.ObjectTag;
+import com.denizenscript.denizencore.objects.core.BinaryTag;
+import com.denizenscript.denizencore.objects.core.ElementTag;
+import com.denizenscript.denizencore.scripts.ScriptEntry;
+import com.denizenscript.denizencore.scripts.commands.AbstractCommand;
+import com.denizenscript.denizencore.scripts.commands.Holdable;
+import com.denizenscript.denizencore.utilities.debugging.Debug;
+import org.darwin.denizenAdditions.tags.BinaryTagEncrypt;
+import org.darwin.denizenAdditions.utilities.AsyncExecutor;
+import org.darwin.denizenAdditions.utilities.AsyncFiles;
+import org.darwin.denizenAdditions.utilities.CompletionQueue;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+
+public class AsyncFileReadCommand extends AbstractCommand implements Holdable {
+
+    public AsyncFileReadCommand() {
+        setName("async_fileread");
+        setSyntax("async_fileread [path:<path>] (offset:<#>) (length:<#>) (decrypt:<key>)");
+        setRequiredArguments(1, 4);
+        isProcedural = false;
+    }
+
+    // <--[command]
+    // @Name async_fileread
+    // @Syntax async_fileread [path:<path>] (offset:<#>) (length:<#>) (decrypt:<key>)
+    // @Required 1
+    // @Maximum 4
+    // @Short Reads a file into a BinaryTag without blocking the main thread or the async workers.
+    // @Group file
+    //
+    // @Description
+    // Reads a file, or part of it, into a BinaryTag using non-blocking file I/O.
+    // Opening the file and the I/O itself run on dedicated file threads (see the "async.file_threads" config value), so neither the main thread nor any Denizen async worker waits while the file is read.
+    // This makes it the preferred way to load files from async queues too.
+    //
+    // Optionally specify "offset" to start reading at that byte, and "length" to read at most that many bytes (defaults to the rest of the file).
+    // A single read is limited to about 2GB.
+    //
+    // Optionally specify "decrypt" with a key to decrypt the data once read, as <@link tag BinaryTag.decrypt_chunked> would.
+    // Decrypting runs on the async worker cores, not on the main thread.
+    //
+    // The path is relative to the Denizen folder, and is subject to the same file access rules as <@link command fileread>.
+    //
+    // The async_fileread command is ~waitable. Refer to <@link language ~waitable>.
+    //
+    // @Tags
+    // <entry[saveName].data> returns the BinaryTag read (and decrypted) from the file.
+    // <entry[saveName].success> returns whether the file was read.
+    //
+    // @Usage
+    // Use to load an encrypted blob.
+    // - ~async_fileread path:data/inventories/<player.uuid>.bin decrypt:<secret[inventory_key]> save:read
+    // - define inventory <entry[read].data.utf8_decode>
+    // -->
+
+    @Override
+    public void parseArgs(ScriptEntry scriptEntry) throws InvalidArgumentsException {
+        for (Argument arg : scriptEntry) {
+            if (!scriptEntry.hasObject("path")
+                    && arg.matchesPrefix("path")) {
+                scriptEntry.addObject("path", arg.asElement());
+            }
+            else if (!scriptEntry.hasObject("offset")
+                    && arg.matchesPrefix("offset")
+                    && arg.matchesInteger()) {
+                scriptEntry.addObject("offset", arg.asElement());
+            }
+            else if (!scriptEntry.hasObject("length")
+                    && arg.matchesPrefix("length")
+                    && arg.matchesInteger()) {
+                scriptEntry.addObject("length", arg.asElement());
+            }
+            else if (!scriptEntry.hasObject("decrypt")
+                    && arg.matchesPrefix("decrypt")) {
+                scriptEntry.addObject("decrypt", arg.object);
+            }
+            else {
+                arg.reportUnhandled();
+            }
+        }
+        if (!scriptEntry.hasObject("path")) {
+            throw new InvalidArgumentsException("Must specify a path.");
+        }
+    }
+
+    @Override
+    public void execute(ScriptEntry scriptEntry) {
+        ElementTag path = scriptEntry.getElement("path");
+        ElementTag offset = scriptEntry.getElement("offset");
+        ElementTag length = scriptEntry.getElement("length");
+        ObjectTag key = scriptEntry.getObjectTag("decrypt");
+
+        if (scriptEntry.dbCallShouldDebug()) {
+            Debug.report(scriptEntry, getName(), path, offset, length, key != null ? new ElementTag("decrypt") : null);
+        }
+
+        File file = new File(Denizen.getInstance().getDataFolder(), path.asString());
+        if (!Utilities.canReadFile(file)) {
+            Debug.echoError(scriptEntry, "Cannot read from that file path due to security settings in Denizen/config.yml.");
+            scriptEntry.setFinished(true);
+            return;
+        }
+        if (!file.isFile()) {
+            Debug.echoError(scriptEntry, "File '" + path.asString() + "' does not exist.");
+            scriptEntry.setFinished(true);
+            return;
+        }
+
+        AsyncFiles.read(file.toPath(), offset != null ? Math.max(0, offset.asLong()) : 0, length != null ? length.asLong() : -1)
+                .thenApplyAsync(data -> {
+                    if (key == null) {
+                        return data;
+                    }
+                    try {
+                        return BinaryTagEncrypt.decryptChunked(data, key);
+                    }
+                    catch (Exception ex) {
+                        throw new CompletionException(ex);
+                    }
+                }, AsyncExecutor.getForkJoinPool())
+                .whenComplete((data, error) -> {
+                    Map<String, ObjectTag> saved = new HashMap<>();
+                    if (error != null) {
+                        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                        Debug.echoError(scriptEntry, "Reading file '" + path.asString() + "' failed: " + cause);
+                        saved.put("success", new ElementTag(false));
+                    }
+                    else {
+                        saved.put("data", new BinaryTag(data));
+                        saved.put("success", new ElementTag(true));
+                    }
+                    CompletionQueue.complete(scriptEntry, saved);
+                });
+    }
+}
@@ -0,0 +1,150 @@
+package org.darwin.denizenAdditions.commands;
+
+import com.denizenscript.denizen.Denizen;
+import com.denizenscript.denizen.utilities.Utilities;
+import com.denizenscript.denizencore.exceptions.InvalidArgumentsException;
+import com.denizenscript.denizencore.objects.Argument;
+import com.denizenscript.denizencore.objects.ObjectTag;
+import com.denizenscript.denizencore.objects.core.BinaryTag;
+import com.denizenscript.denizencore.objects.core.ElementTag;
+import com.denizenscript.denizencore.scripts.ScriptEntry;
+import com.denizenscript.denizencore.scripts.commands.AbstractCommand;
+import com.denizenscript.denizencore.scripts.commands.Holdable;
+import com.denizenscript.denizencore.utilities.debugging.Debug;
+import org.darwin.denizenAdditions.tags.BinaryTagEncrypt;
+import org.darwin.denizenAdditions.utilities.AsyncExecutor;
+import org.darwin.denizenAdditions.utilities.AsyncFiles;
+import org.darwin.denizenAdditions.utilities.CompletionQueue;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+public class AsyncFileWriteCommand extends AbstractCommand implements Holdable {
+
+    public AsyncFileWriteCommand() {
+        setName("async_filewrite");
+        setSyntax("async_filewrite [path:<path>] [data:<binary>] (append/offset:<#>) (encrypt:<key>)");
+        setRequiredArguments(2, 4);
+        isProcedural = false;
+    }
+
+    // <--[command]
+    // @Name async_filewrite
+    // @Syntax async_filewrite [path:<path>] [data:<binary>] (append/offset:<#>) (encrypt:<key>)
+    // @Required 2
+    // @Maximum 4
+    // @Short Writes a BinaryTag to a file without blocking the main thread or the async workers.
+    // @Group file
+    //
+    // @Description
+    // Writes a BinaryTag to a file using non-blocking file I/O, creating the file (and its folders) if needed.
+    // Opening the file and the I/O itself run on dedicated file threads (see the "async.file_threads" config value), so neither the main thread nor any Denizen async worker waits while the file is written.
+    // This makes it the preferred way to save files from async queues too.
+    //
+    // By default the file's contents are replaced.
+    // Specify "append" to write after the end of the file, or "offset" to write at that byte, keeping the rest of the file.
+    // Appends from several commands at once to the same file may overlap, as the end of the file is only read when each one starts.
+    //
+    // Optionally specify "encrypt" with a key to encrypt the data before writing it, as <@link tag BinaryTag.encrypt_chunked> would.
+    // Encrypting runs on the async worker cores, not on the main thread.
+    //
+    // The path is relative to the Denizen folder, and is subject to the same file access rules as <@link command filewrite>.
+    //
+    // The async_filewrite command is ~waitable. Refer to <@link language ~waitable>.
+    //
+    // @Tags
+    // <entry[saveName].success> returns whether the file was written.
+    // <entry[saveName].size> returns the size in bytes of the file after writing.
+    //
+    // @Usage
+    // Use to save an encrypted blob.
+    // - ~async_filewrite path:data/inventories/<player.uuid>.bin data:<[inventory].utf8_encode> encrypt:<secret[inventory_key]>
+    // -->
+
+    @Override
+    public void parseArgs(ScriptEntry scriptEntry) throws InvalidArgumentsException {
+        for (Argument arg : scriptEntry) {
+            if (!scriptEntry.hasObject("path")
+                    && arg.matchesPrefix("path")) {
+                scriptEntry.addObject("path", arg.asElement());
+            }
+            else if (!scriptEntry.hasObject("data")
+                    && arg.matchesPrefix("data")
+                    && arg.matchesArgumentType(BinaryTag.class)) {
+                scriptEntry.addObject("data", arg.asType(BinaryTag.class));
+            }
+            else if (!scriptEntry.hasObject("append")
+                    && !scriptEntry.hasObject("offset")
+                    && arg.matches("append")) {
+                scriptEntry.addObject("append", new ElementTag(true));
+            }
+            else if (!scriptEntry.hasObject("offset")
+                    && !scriptEntry.hasObject("append")
+                    && arg.matchesPrefix("offset")
+                    && arg.matchesInteger()) {
+                scriptEntry.addObject("offset", arg.asElement());
+            }
+            else if (!scriptEntry.hasObject("encrypt")
+                    && arg.matchesPrefix("encrypt")) {
+                scriptEntry.addObject("encrypt", arg.object);
+            }
+            else {
+                arg.reportUnhandled();
+            }
+        }
+        if (!scriptEntry.hasObject("path")) {
+            throw new InvalidArgumentsException("Must specify a path.");
+        }
+        if (!scriptEntry.hasObject("data")) {
+            throw new InvalidArgumentsException("Must specify data to write.");
+        }
+    }
+
+    @Override
+    public void execute(ScriptEntry scriptEntry) {
+        ElementTag path = scriptEntry.getElement("path");
+        BinaryTag data = scriptEntry.getObjectTag("data");
+        boolean append = scriptEntry.hasObject("append");
+        ElementTag offset = scriptEntry.getElement("offset");
+        ObjectTag key = scriptEntry.getObjectTag("encrypt");
+
+        if (scriptEntry.dbCallShouldDebug()) {
+            Debug.report(scriptEntry, getName(), path, data, append ? new ElementTag("append") : null, offset, key != null ? new ElementTag("encrypt") : null);
+        }
+
+        File file = new File(Denizen.getInstance().getDataFolder(), path.asString());
+        if (!Utilities.canWriteToFile(file)) {
+            Debug.echoError(scriptEntry, "Cannot write to that file path due to security settings in Denizen/config.yml.");
+            scriptEntry.setFinished(true);
+            return;
+        }
+        AsyncFiles.WriteMode mode = append ? AsyncFiles.WriteMode.APPEND : offset != null ? AsyncFiles.WriteMode.OFFSET : AsyncFiles.WriteMode.OVERWRITE;
+        long position = offset != null ? Math.max(0, offset.asLong()) : 0;
+
+        CompletableFuture<byte[]> bytes = key == null ? CompletableFuture.completedFuture(data.data) : CompletableFuture.supplyAsync(() -> {
+            try {
+                return BinaryTagEncrypt.encryptChunked(data.data, key);
+            }
+            catch (Exception ex) {
+                throw new CompletionException(ex);
+            }
+        }, AsyncExecutor.getForkJoinPool());
+        bytes.thenCompose(toWrite -> AsyncFiles.write(file.toPath(), toWrite, mode, position))
+                .whenComplete((size, error) -> {
+                    Map<String, ObjectTag> saved = new HashMap<>();
+                    if (error != null) {
+                        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                        Debug.echoError(scriptEntry, "Writing file '" + path.asString() + "' failed: " + cause);
+                        saved.put("success", new ElementTag(false));
+                    }
+                    else {
+                        saved.put("size", new ElementTag(size));
+                        saved.put("success", new ElementTag(true));
+                    }
+                    CompletionQueue.complete(scriptEntry, saved);
+                });
+    }
+}
@@ -0,0 +1,209 @@
+package org.darwin.denizenAdditions.commands;
+
+import com.denizenscript.denizencore.exceptions.InvalidArgumentsException;
+import com.denizenscript.denizencore.objects.Argument;
+import com.denizenscript.denizencore.objects.ObjectTag;
+import com.denizenscript.denizencore.objects.core.ElementTag;
+import com.denizenscript.denizencore.objects.core.ListTag;
+import com.denizenscript.denizencore.objects.core.MapTag;
+import com.denizenscript.denizencore.scripts.ScriptEntry;
+import com.denizenscript.denizencore.scripts.commands.BracedCommand;
+import com.denizenscript.denizencore.scripts.commands.Holdable;
+import com.denizenscript.denizencore.scripts.queues.ScriptQueue;
+import com.denizenscript.denizencore.utilities.debugging.Debug;
+import org.darwin.denizenAdditions.utilities.AsyncBlockTemplate;
+import org.darwin.denizenAdditions.utilities.AsyncExecutor;
+import org.darwin.denizenAdditions.utilities.AsyncQueue;
+import org.darwin.denizenAdditions.utilities.CompletionQueue;
+import org.darwin.denizenAdditions.utilities.CopyOnWriteDefinitions;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class AsyncForeachCommand extends BracedCommand implements Holdable {
+
+    public AsyncForeachCommand() {
+        setName("async_foreach");
+        setSyntax("async_foreach [<list>] (as:<name>) (workers:<#>) (chunk_size:<#>) [<commands>]");
+        setRequiredArguments(1, 5);
+        isProcedural = true;
+    }
+
+    // <--[command]
+    // @Name async_foreach
+    // @Syntax async_foreach [<list>] (as:<name>) (workers:<#>) (chunk_size:<#>) [<commands>]
+    // @Required 1
+    // @Maximum 5
+    // @Short Runs a block of commands for every item of a list, in parallel on the async workers.
+    // @Group queue
+    // @Warning Experimental! Use only with commands known to be thread-safe.
+    //
+    // @Description
+    // Works like foreach, but runs the block for many items at the same time, spread over several async workers.
+    // Use it for CPU-heavy loops, like parsing or transforming thousands of maps.
+    //
+    // Every run of the block gets its own copy of the current queue's definitions, so runs can't see each other's changes,
+    // and nothing they define is kept in the current queue.
+    // The item is in the definition "value" (or the name given with "as:"), and its index (starting at 1) is in "loop_index".
+    // Since runs happen in any order at once, don't use the loop commands (foreach stop/next, while, ...) to control the loop.
+    //
+    // The result for an item is the value of its "value" definition once the block ends.
+    // So redefine it to transform the item, leave it as-is to keep the item, or undefine it to drop the item from the results.
+    // Results are in the order of the input list, regardless of which run finishes first.
+    //
+    // The list is split into chunks, which the workers take one at a time until none are left.
+    // Optionally, use "workers:" to set how many workers to use (defaults to the "async.pool_size" config value).
+    // Optionally, use "chunk_size:" to set how many items a worker takes at once (by default, each worker gets about 4 chunks).
+    //
+    // The async_foreach command is ~waitable. Refer to <@link language ~waitable>. Results are only saved when waited for.
+    //
+    // @Tags
+    // <entry[saveName].result_list> returns a ListTag of the results, in input order.
+    //
+    // @Usage
+    // Use to parse thousands of YAML strings using every worker.
+    // - ~async_foreach <[raw_rows]> as:row save:parsed:
+    //   - define row <[row].parse_yaml>
+    // - define rows <entry[parsed].result_list>
+    //
+    // @Usage
+    // Use to keep only the expensive items, in their original order.
+    // - ~async_foreach <[items]> save:expensive:
+    //   - if <[value].flag[price]> < 100:
+    //     - define value:!
+    // -->
+
+    @Override
+    public void parseArgs(ScriptEntry scriptEntry) throws InvalidArgumentsException {
+        for (Argument arg : scriptEntry) {
+            if (!scriptEntry.hasObject("as_name")
+                    && arg.matchesPrefix("as")) {
+                scriptEntry.addObject("as_name", arg.asElement());
+            }
+            else if (!scriptEntry.hasObject("workers")
+                    && arg.matchesPrefix("workers")
+                    && arg.matchesInteger()) {
+                scriptEntry.addObject("workers", arg.asElement());
+            }
+            else if (!scriptEntry.hasObject("chunk_size")
+                    && arg.matchesPrefix("chunk_size")
+                    && arg.matchesInteger()) {
+                scriptEntry.addObject("chunk_size", arg.asElement());
+            }
+            else if (arg.matches("{")) {
+                break;
+            }
+            else if (!scriptEntry.hasObject("list")
+                    && !arg.hasPrefix()) {
+                scriptEntry.addObject("list", arg.asType(ListTag.class));
+            }
+            else {
+                arg.reportUnhandled();
+            }
+        }
+        if (!scriptEntry.hasObject("list")) {
+            throw new InvalidArgumentsException("Must specify a list to loop through.");
+        }
+        AsyncBlockTemplate template = AsyncBlockTemplate.forEntry(scriptEntry);
+        if (template == null) {
+            throw new InvalidArgumentsException("Must have a following block of commands.");
+        }
+        scriptEntry.addObject("template", template);
+        scriptEntry.defaultObject("as_name", new ElementTag("value"));
+    }
+
+    @Override
+    public void execute(ScriptEntry scriptEntry) {
+        ListTag list = scriptEntry.getObjectTag("list");
+        ElementTag asName = scriptEntry.getElement("as_name");
+        ElementTag workersElement = scriptEntry.getElement("workers");
+        ElementTag chunkSizeElement = scriptEntry.getElement("chunk_size");
+        AsyncBlockTemplate template = (AsyncBlockTemplate) scriptEntry.getObject("template");
+
+        if (scriptEntry.dbCallShouldDebug()) {
+            Debug.report(scriptEntry, getName(), list, asName, workersElement, chunkSizeElement);
+        }
+
+        int size = list.size();
+        if (size == 0) {
+            scriptEntry.saveObject("result_list", new ListTag());
+            scriptEntry.setFinished(true);
+            return;
+        }
+        int workers = workersElement != null ? Math.max(1, workersElement.asInt()) : AsyncExecutor.getPoolSize();
+        int chunkSize = chunkSizeElement != null ? Math.max(1, chunkSizeElement.asInt()) : Math.max(1, size / (workers * 4));
+        int chunkCount = (size + chunkSize - 1) / chunkSize;
+        workers = Math.min(workers, chunkCount);
+        if (!scriptEntry.shouldWaitFor()) {
+            scriptEntry.setFinished(true);
+        }
+
+        List<ObjectTag> items = List.copyOf(list.objectForms);
+        ObjectTag[] results = new ObjectTag[size];
+        AtomicInteger nextChunk = new AtomicInteger();
+        AtomicInteger activeWorkers = new AtomicInteger(workers);
+        ScriptQueue parentQueue = scriptEntry.getResidingQueue();
+        // Workers share from a snapshot taken here, as the parent's own definitions may change while they run.
+        MapTag definitions = new MapTag();
+        if (parentQueue != null) {
+            CopyOnWriteDefinitions.shareInto(parentQueue.getAllDefinitions(), definitions);
+        }
+        String valueName = asName.asString();
+
+        Runnable workerDone = () -> {
+            if (activeWorkers.decrementAndGet() != 0 || !scriptEntry.shouldWaitFor()) {
+                return;
+            }
+            if (nextChunk.get() < chunkCount) {
+                Debug.echoError(scriptEntry, "Async foreach workers were dropped, only part of the list was processed.");
+            }
+            ListTag resultList = new ListTag(size);
+            for (ObjectTag result : results) {
+                if (result != null) {
+                    resultList.addObject(result);
+                }
+            }
+            CompletionQueue.complete(scriptEntry, Map.of("result_list", resultList));
+        };
+
+        Runnable worker = () -> {
+            try {
+                int chunk;
+                while ((chunk = nextChunk.getAndIncrement()) < chunkCount) {
+                    int end = Math.min(size, (chunk + 1) * chunkSize);
+                    for (int i = chunk * chunkSize; i < end; i++) {
+                        results[i] = runItem(scriptEntry, template, parentQueue, definitions, valueName, items.get(i), i + 1);
+                    }
+                }
+            }
+            finally {
+                workerDone.run();
+            }
+        };
+
+        for (int i = 0; i < workers; i++) {
+            AsyncExecutor.submit(scriptEntry, getName(), worker, workerDone);
+        }
+    }
+
+    private static ObjectTag runItem(ScriptEntry scriptEntry, AsyncBlockTemplate template, ScriptQueue parentQueue, MapTag definitions, String valueName, ObjectTag item, int index) {
+        AsyncQueue queue = new AsyncQueue(AsyncQueue.nextId("ASYNC_FOREACH"));
+        queue.addEntries(template.instantiate(scriptEntry, queue));
+        CopyOnWriteDefinitions.shareInto(definitions, queue.getAllDefinitions());
+        if (parentQueue != null) {
+            queue.setContextSource(parentQueue.contextSource);
+            queue.procedural = parentQueue.procedural;
+        }
+        queue.addDefinition(valueName, item);
+        queue.addDefinition("loop_index", new ElementTag(index));
+        try {
+            queue.start(true);
+        }
+        catch (Throwable ex) {
+            Debug.echoError("Error in async_foreach at index " + index + ": " + ex.getMessage());
+            Debug.echoError(ex);
+        }
+        return queue.getDefinitionObject(valueName);
+    }
+}
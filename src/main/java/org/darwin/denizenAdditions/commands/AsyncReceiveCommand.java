@@ -0,0 +1,154 @@
+package org.darwin.denizenAdditions.commands;
+
+import com.denizenscript.denizencore.exceptions.InvalidArgumentsException;
+import com.denizenscript.denizencore.objects.Argument;
+import com.denizenscript.denizencore.objects.ObjectTag;
+import com.denizenscript.denizencore.objects.core.DurationTag;
+import com.denizenscript.denizencore.objects.core.ElementTag;
+import com.denizenscript.denizencore.objects.core.ListTag;
+import com.denizenscript.denizencore.scripts.ScriptEntry;
+import com.denizenscript.denizencore.scripts.commands.AbstractCommand;
+import com.denizenscript.denizencore.scripts.commands.Holdable;
+import com.denizenscript.denizencore.utilities.debugging.Debug;
+import org.bukkit.Bukkit;
+import org.darwin.denizenAdditions.utilities.AsyncChannel;
+import org.darwin.denizenAdditions.utilities.AsyncExecutor;
+import org.darwin.denizenAdditions.utilities.CompletionQueue;
+
+import java.util.function.BooleanSupplier;
+
+public class AsyncReceiveCommand extends AbstractCommand implements Holdable {
+
+    public AsyncReceiveCommand() {
+        setName("async_receive");
+        setSyntax("async_receive [channel:<name>] (max:<#>) (capacity:<#>) (timeout:<duration>)");
+        setRequiredArguments(1, 4);
+        isProcedural = false;
+    }
+
+    // <--[command]
+    // @Name async_receive
+    // @Syntax async_receive [channel:<name>] (max:<#>) (capacity:<#>) (timeout:<duration>)
+    // @Required 1
+    // @Maximum 4
+    // @Short Takes objects from a named async channel.
+    // @Group queue
+    // @Warning Experimental!
+    //
+    // @Description
+    // Takes the oldest object from a channel filled by <@link command async_send>.
+    //
+    // If the channel is empty, the receiver waits for an object:
+    // in an async queue the thread waits up to "timeout:" (defaults to the "channels.default_timeout_ms" config value),
+    // and on the main thread the command waits only if ~waited for (then "timeout:" also applies, if given).
+    // An async queue on a pooled worker doesn't wait at all if every other worker is busy, as whatever would fill the channel might have no thread left to run on. A receive on the main thread that isn't waited for returns nothing right away when the channel is empty.
+    //
+    // Optionally, specify "max:" to also take up to that many objects in total that are already waiting, to process them in batches.
+    //
+    // Once the channel is closed and empty, receives return right away with nothing, and "closed" is true.
+    // A typical consumer loops until then.
+    //
+    // Optionally, specify "capacity:" to set the capacity of the channel, if this receive creates it.
+    //
+    // The async_receive command is ~waitable. Refer to <@link language ~waitable>.
+    //
+    // @Tags
+    // <entry[saveName].value> returns the first object received, if any.
+    // <entry[saveName].values> returns a ListTag of every object received (at most "max:").
+    // <entry[saveName].closed> returns whether nothing was received because the channel is closed and empty.
+    // <entry[saveName].timed_out> returns whether nothing was received while the channel is still open (the timeout passed, or the channel was empty for a receive that doesn't wait).
+    //
+    // @Usage
+    // Use to process lines in batches of 100 until the sender closes the channel.
+    // - ~async save:consumer:
+    //   - while true:
+    //     - async_receive channel:lines max:100 save:batch
+    //     - if <entry[batch].closed>:
+    //       - while stop
+    //     - async_send channel:parsed value:<entry[batch].values.parse[parse_yaml]>
+    // -->
+
+    @Override
+    public void parseArgs(ScriptEntry scriptEntry) throws InvalidArgumentsException {
+        for (Argument arg : scriptEntry) {
+            if (!scriptEntry.hasObject("channel")
+                    && arg.matchesPrefix("channel")) {
+                scriptEntry.addObject("channel", arg.asElement());
+            }
+            else if (!scriptEntry.hasObject("max")
+                    && arg.matchesPrefix("max")
+                    && arg.matchesInteger()) {
+                scriptEntry.addObject("max", arg.asElement());
+            }
+            else if (!scriptEntry.hasObject("capacity")
+                    && arg.matchesPrefix("capacity")
+                    && arg.matchesInteger()) {
+                scriptEntry.addObject("capacity", arg.asElement());
+            }
+            else if (!scriptEntry.hasObject("timeout")
+                    && arg.matchesPrefix("timeout")
+                    && arg.matchesArgumentType(DurationTag.class)) {
+                scriptEntry.addObject("timeout", arg.asType(DurationTag.class));
+            }
+            else {
+                arg.reportUnhandled();
+            }
+        }
+        if (!scriptEntry.hasObject("channel")) {
+            throw new InvalidArgumentsException("Must specify a channel.");
+        }
+    }
+
+    @Override
+    public void execute(ScriptEntry scriptEntry) {
+        ElementTag channelName = scriptEntry.getElement("channel");
+        ElementTag maxElement = scriptEntry.getElement("max");
+        ElementTag capacity = scriptEntry.getElement("capacity");
+        DurationTag timeout = scriptEntry.getObjectTag("timeout");
+
+        if (scriptEntry.dbCallShouldDebug()) {
+            Debug.report(scriptEntry, getName(), channelName, maxElement, capacity, timeout);
+        }
+
+        AsyncChannel channel = AsyncChannel.get(channelName.asString(), capacity != null ? capacity.asInt() : 0);
+        int max = maxElement != null ? Math.max(1, maxElement.asInt()) : 1;
+        long timeoutMillis = timeout != null ? timeout.getMillis() : 0;
+        if (!Bukkit.isPrimaryThread()) {
+            long waitMillis = !AsyncExecutor.canBlock() ? 0 : timeout != null ? timeoutMillis : AsyncChannel.defaultTimeoutMillis;
+            finish(scriptEntry, channel, channel.take(waitMillis * 1_000_000L), max);
+        }
+        else if (scriptEntry.shouldWaitFor()) {
+            BooleanSupplier cancel = channel.receiveLater(item -> finish(scriptEntry, channel, item, max));
+            if (timeoutMillis > 0) {
+                AsyncExecutor.schedule(() -> CompletionQueue.submit(() -> {
+                    if (cancel.getAsBoolean()) {
+                        finish(scriptEntry, channel, null, max);
+                    }
+                }), timeoutMillis);
+            }
+        }
+        else {
+            finish(scriptEntry, channel, channel.poll(), max);
+        }
+    }
+
+    private static void finish(ScriptEntry scriptEntry, AsyncChannel channel, ObjectTag first, int max) {
+        ListTag values = new ListTag();
+        if (first != null) {
+            values.addObject(first);
+            ObjectTag next;
+            while (values.size() < max && (next = channel.poll()) != null) {
+                values.addObject(next);
+            }
+            scriptEntry.saveObject("value", first);
+        }
+        boolean closed = first == null && channel.isDone();
+        if (closed) {
+            channel.forget();
+        }
+        scriptEntry.saveObject("values", values);
+        scriptEntry.saveObject("closed", new ElementTag(closed));
+        scriptEntry.saveObject("timed_out", new ElementTag(first == null && !closed));
+        scriptEntry.setFinished(true);
+    }
+}
@@ -0,0 +1,144 @@
+package org.darwin.denizenAdditions.commands;
+
+import com.denizenscript.denizencore.exceptions.InvalidArgumentsException;
+import com.denizenscript.denizencore.objects.Argument;
+import com.denizenscript.denizencore.objects.ObjectTag;
+import com.denizenscript.denizencore.objects.core.DurationTag;
+import com.denizenscript.denizencore.objects.core.ElementTag;
+import com.denizenscript.denizencore.scripts.ScriptEntry;
+import com.denizenscript.denizencore.scripts.commands.AbstractCommand;
+import com.denizenscript.denizencore.scripts.commands.Holdable;
+import com.denizenscript.denizencore.utilities.debugging.Debug;
+import org.bukkit.Bukkit;
+import org.darwin.denizenAdditions.utilities.AsyncChannel;
+import org.darwin.denizenAdditions.utilities.AsyncExecutor;
+
+public class AsyncSendCommand extends AbstractCommand implements Holdable {
+
+    public AsyncSendCommand() {
+        setName("async_send");
+        setSyntax("async_send [channel:<name>] (value:<object>) (close) (capacity:<#>) (timeout:<duration>)");
+        setRequiredArguments(1, 5);
+        isProcedural = false;
+    }
+
+    // <--[command]
+    // @Name async_send
+    // @Syntax async_send [channel:<name>] (value:<object>) (close) (capacity:<#>) (timeout:<duration>)
+    // @Required 1
+    // @Maximum 5
+    // @Short Sends an object into a named async channel.
+    // @Group queue
+    // @Warning Experimental!
+    //
+    // @Description
+    // Sends an object into a channel, for another queue to take with <@link command async_receive>.
+    // Channels let async blocks and run_async scripts form pipelines (read -> transform -> write) that pass results along as soon as they're ready.
+    //
+    // A channel is created by the first send or receive that names it, holding up to "capacity:" objects (defaults to the "channels.default_capacity" config value).
+    // Objects are received in the order they were sent.
+    //
+    // If the channel is full, the sender waits for room:
+    // in an async queue the thread waits up to "timeout:" (defaults to the "channels.default_timeout_ms" config value),
+    // and on the main thread the command waits only if ~waited for.
+    // An async queue on a pooled worker doesn't wait at all if every other worker is busy, as whatever would empty the channel might have no thread left to run on.
+    // A send on the main thread that isn't waited for fails right away when the channel is full.
+    //
+    // Specify "close" (alone, or along with a last value) to close the channel once you're done sending.
+    // Receivers get everything that was sent before the close, then see the channel as closed.
+    //
+    // The async_send command is ~waitable. Refer to <@link language ~waitable>.
+    //
+    // @Tags
+    // <entry[saveName].sent> returns whether the value was sent.
+    //
+    // @Usage
+    // Use to stream lines to another queue, then close the channel.
+    // - foreach <[lines]> as:line:
+    //   - async_send channel:lines value:<[line]>
+    // - async_send channel:lines close
+    // -->
+
+    @Override
+    public void parseArgs(ScriptEntry scriptEntry) throws InvalidArgumentsException {
+        for (Argument arg : scriptEntry) {
+            if (!scriptEntry.hasObject("channel")
+                    && arg.matchesPrefix("channel")) {
+                scriptEntry.addObject("channel", arg.asElement());
+            }
+            else if (!scriptEntry.hasObject("value")
+                    && arg.matchesPrefix("value")) {
+                scriptEntry.addObject("value", arg.object);
+            }
+            else if (!scriptEntry.hasObject("close")
+                    && arg.matches("close")) {
+                scriptEntry.addObject("close", new ElementTag(true));
+            }
+            else if (!scriptEntry.hasObject("capacity")
+                    && arg.matchesPrefix("capacity")
+                    && arg.matchesInteger()) {
+                scriptEntry.addObject("capacity", arg.asElement());
+            }
+            else if (!scriptEntry.hasObject("timeout")
+                    && arg.matchesPrefix("timeout")
+                    && arg.matchesArgumentType(DurationTag.class)) {
+                scriptEntry.addObject("timeout", arg.asType(DurationTag.class));
+            }
+            else {
+                arg.reportUnhandled();
+            }
+        }
+        if (!scriptEntry.hasObject("channel")) {
+            throw new InvalidArgumentsException("Must specify a channel.");
+        }
+        if (!scriptEntry.hasObject("value") && !scriptEntry.hasObject("close")) {
+            throw new InvalidArgumentsException("Must specify a value to send, or 'close'.");
+        }
+    }
+
+    @Override
+    public void execute(ScriptEntry scriptEntry) {
+        ElementTag channelName = scriptEntry.getElement("channel");
+        ObjectTag value = scriptEntry.getObjectTag("value");
+        ElementTag close = scriptEntry.getElement("close");
+        ElementTag capacity = scriptEntry.getElement("capacity");
+        DurationTag timeout = scriptEntry.getObjectTag("timeout");
+
+        if (scriptEntry.dbCallShouldDebug()) {
+            Debug.report(scriptEntry, getName(), channelName, value, close, capacity, timeout);
+        }
+
+        AsyncChannel channel = AsyncChannel.get(channelName.asString(), capacity != null ? capacity.asInt() : 0);
+        if (value == null) {
+            channel.close();
+            scriptEntry.setFinished(true);
+            return;
+        }
+        // The receiver gets its own copy, so later changes on either side don't leak across threads.
+        ObjectTag item = value.duplicate();
+        if (!Bukkit.isPrimaryThread()) {
+            long waitMillis = !AsyncExecutor.canBlock() ? 0 : timeout != null ? timeout.getMillis() : AsyncChannel.defaultTimeoutMillis;
+            boolean sent = channel.put(item, waitMillis * 1_000_000L);
+            finish(scriptEntry, channel, sent, close != null);
+        }
+        else if (scriptEntry.shouldWaitFor()) {
+            channel.sendLater(item, sent -> finish(scriptEntry, channel, sent, close != null));
+        }
+        else {
+            finish(scriptEntry, channel, channel.offer(item), close != null);
+        }
+    }
+
+    private static void finish(ScriptEntry scriptEntry, AsyncChannel channel, boolean sent, boolean close) {
+        if (!sent) {
+            Debug.echoError(scriptEntry, channel.isClosed()
+                    ? "Can't send to channel '" + channel.name + "': it's closed."
+                    : "Can't send to channel '" + channel.name + "': it's full.");
+        }
+        if (close) {
+            channel.close();
+        }
+        scriptEntry.saveObject("sent", new ElementTag(sent));
+        scriptEntry.setFinished(true);
+    }
+}
@@ -0,0 +1,114 @@
+package org.darwin.denizenAdditions.commands;
+
+import com.denizenscript.denizen.objects.EntityTag;
+import com.denizenscript.denizencore.exceptions.InvalidArgumentsException;
+import com.denizenscript.denizencore.objects.Argument;
+import com.denizenscript.denizencore.objects.core.ElementTag;
+import com.denizenscript.denizencore.objects.core.ListTag;
+import com.denizenscript.denizencore.scripts.ScriptEntry;
+import com.denizenscript.denizencore.scripts.commands.AbstractCommand;
+import com.denizenscript.denizencore.utilities.debugging.Debug;
+import org.bukkit.Bukkit;
+import org.darwin.denizenAdditions.utilities.EntitySnapshots;
+
+import java.util.List;
+
+public class EntitySnapshotCommand extends AbstractCommand {
+
+    public EntitySnapshotCommand() {
+        setName("entity_snapshot");
+        setSyntax("entity_snapshot [<entity>|.../clear] (remove)");
+        setRequiredArguments(1, 2);
+        isProcedural = false;
+    }
+
+    // <--[command]
+    // @Name entity_snapshot
+    // @Syntax entity_snapshot [<entity>|.../clear] (remove)
+    // @Required 1
+    // @Maximum 2
+    // @Short Starts or stops taking per-tick snapshots of entities, for async queues to read.
+    // @Group entity
+    //
+    // @Description
+    // Live entity data can't be read safely from async queues.
+    // This command adds entities to the snapshot service, which copies a small part of their data once per tick on the main thread.
+    // Async queues can then read that copy with the "snapshot_" EntityTag tags, which never touch the live entity.
+    //
+    // Snapshots include the active potion effects, the thrower and owner of dropped items, and whether freeze ticks are locked.
+    // They're taken at the start of every tick, so they can be up to one tick old.
+    //
+    // Entities stay tracked until removed, even while they're unloaded (they just have no snapshot until they load again).
+    // Specify "remove" to stop tracking the given entities, or use "clear" to stop tracking every entity.
+    // Set the "snapshots.all_players" config value to true to always track every online player.
+    //
+    // @Tags
+    // <EntityTag.has_snapshot>
+    // <EntityTag.snapshot_effect[<effect>]>
+    // <EntityTag.snapshot_thrower>
+    // <EntityTag.snapshot_item_owner>
+    // <EntityTag.snapshot_freeze_locked>
+    //
+    // @Usage
+    // Use to read the players' effects from an async queue.
+    // - define players <server.online_players>
+    // - entity_snapshot <[players]>
+    // - ~async:
+    //   - define poisoned <[players].filter[snapshot_effect[poison].exists]>
+    // -->
+
+    @Override
+    public void parseArgs(ScriptEntry scriptEntry) throws InvalidArgumentsException {
+        for (Argument arg : scriptEntry) {
+            if (!scriptEntry.hasObject("clear")
+                    && !scriptEntry.hasObject("entities")
+                    && arg.matches("clear")) {
+                scriptEntry.addObject("clear", new ElementTag(true));
+            }
+            else if (!scriptEntry.hasObject("remove")
+                    && arg.matches("remove")) {
+                scriptEntry.addObject("remove", new ElementTag(true));
+            }
+            else if (!scriptEntry.hasObject("entities")
+                    && !scriptEntry.hasObject("clear")
+                    && arg.matchesArgumentList(EntityTag.class)) {
+                scriptEntry.addObject("entities", arg.asType(ListTag.class).filter(EntityTag.class, scriptEntry));
+            }
+            else {
+                arg.reportUnhandled();
+            }
+        }
+        if (!scriptEntry.hasObject("entities") && !scriptEntry.hasObject("clear")) {
+            throw new InvalidArgumentsException("Must specify entities, or 'clear'.");
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void execute(ScriptEntry scriptEntry) {
+        List<EntityTag> entities = (List<EntityTag>) scriptEntry.getObject("entities");
+        ElementTag clear = scriptEntry.getElement("clear");
+        ElementTag remove = scriptEntry.getElement("remove");
+
+        if (scriptEntry.dbCallShouldDebug()) {
+            Debug.report(scriptEntry, getName(), entities != null ? new ListTag(entities) : null, clear, remove);
+        }
+
+        if (clear != null) {
+            EntitySnapshots.clear();
+            return;
+        }
+        for (EntityTag entity : entities) {
+            if (remove != null) {
+                EntitySnapshots.untrack(entity.getUUID());
+            }
+            else {
+                EntitySnapshots.track(entity.getUUID());
+            }
+        }
+        // Tags should work right after this command, not only from the next tick.
+        if (remove == null && Bukkit.isPrimaryThread()) {
+            EntitySnapshots.capture();
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package org.darwin.denizenAdditions.commands;
+
+import com.denizenscript.denizen.Denizen;
+import com.denizenscript.denizen.utilities.Utilities;
+import com.denizenscript.denizencore.exceptions.InvalidArgumentsException;
+import com.denizenscript.denizencore.objects.Argument;
+import com.denizenscript.denizencore.objects.ObjectTag;
+import com.denizenscript.denizencore.objects.core.ElementTag;
+import com.denizenscript.denizencore.scripts.ScriptEntry;
+import com.denizenscript.denizencore.scripts.commands.AbstractCommand;
+import com.denizenscript.denizencore.scripts.commands.Holdable;
+import com.denizenscript.denizencore.utilities.debugging.Debug;
+import org.darwin.denizenAdditions.tags.BinaryTagEncrypt;
+import org.darwin.denizenAdditions.utilities.AsyncExecutor;
+import org.darwin.denizenAdditions.utilities.ChunkedCipher;
+import org.darwin.denizenAdditions.utilities.CompletionQueue;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.util.HashMap;
+import java.util.Map;
+
+public class FileEncryptCommand extends AbstractCommand implements Holdable {
+
+    public FileEncryptCommand() {
+        setName("file_encrypt");
+        setSyntax("file_encrypt [origin:<origin>] [destination:<destination>] [key:<key>] (decrypt) (overwrite)");
+        setRequiredArguments(3, 5);
+        isProcedural = false;
+    }
+
+    // <--[command]
+    // @Name file_encrypt
+    // @Syntax file_encrypt [origin:<origin>] [destination:<destination>] [key:<key>] (decrypt) (overwrite)
+    // @Required 3
+    // @Maximum 5
+    // @Short Encrypts or decrypts a file into another file, without loading it into memory.
+    // @Group file
+    //
+    // @Description
+    // Encrypts the origin file into the destination file, in the same format as <@link tag BinaryTag.encrypt_chunked>, using the specified key.
+    // Specify "decrypt" to decrypt instead. Files encrypted by <@link tag BinaryTag.encrypt> can be decrypted too.
+    //
+    // The file is streamed a chunk at a time on an async worker, so even very large files only use a few chunk sized buffers of memory.
+    // The result is written to a temporary file first and only moved to the destination once complete,
+    // so a failed decrypt (wrong key, or damaged file) never leaves partial data behind.
+    //
+    // Both paths are relative to the Denizen folder, and are subject to the same file access rules as <@link command filecopy>.
+    // Specify "overwrite" to replace the destination if it already exists.
+    //
+    // The file_encrypt command is ~waitable. Refer to <@link language ~waitable>.
+    //
+    // @Tags
+    // <entry[saveName].success> returns whether the file was encrypted or decrypted.
+    // <entry[saveName].size> returns the size in bytes of the written file.
+    //
+    // @Usage
+    // Use to encrypt a backup.
+    // - ~file_encrypt origin:data/backup.zip destination:data/backup.zip.enc key:<secret[backup_key]> save:encrypted
+    //
+    // @Usage
+    // Use to restore it.
+    // - ~file_encrypt origin:data/backup.zip.enc destination:data/backup.zip key:<secret[backup_key]> decrypt overwrite
+    // -->
+
+    @Override
+    public void parseArgs(ScriptEntry scriptEntry) throws InvalidArgumentsException {
+        for (Argument arg : scriptEntry) {
+            if (!scriptEntry.hasObject("origin")
+                    && arg.matchesPrefix("origin")) {
+                scriptEntry.addObject("origin", arg.asElement());
+            }
+            else if (!scriptEntry.hasObject("destination")
+                    && arg.matchesPrefix("destination")) {
+                scriptEntry.addObject("destination", arg.asElement());
+            }
+            else if (!scriptEntry.hasObject("key")
+                    && arg.matchesPrefix("key")) {
+                scriptEntry.addObject("key", arg.object);
+            }
+            else if (!scriptEntry.hasObject("decrypt")
+                    && arg.matches("decrypt")) {
+                scriptEntry.addObject("decrypt", new ElementTag(true));
+            }
+            else if (!scriptEntry.hasObject("overwrite")
+                    && arg.matches("overwrite")) {
+                scriptEntry.addObject("overwrite", new ElementTag(true));
+            }
+            else {
+                arg.reportUnhandled();
+            }
+        }
+        if (!scriptEntry.hasObject("origin") || !scriptEntry.hasObject("destination")) {
+            throw new InvalidArgumentsException("Must specify an origin and a destination.");
+        }
+        if (!scriptEntry.hasObject("key")) {
+            throw new InvalidArgumentsException("Must specify a key.");
+        }
+    }
+
+    @Override
+    public void execute(ScriptEntry scriptEntry) {
+        ElementTag origin = scriptEntry.getElement("origin");
+        ElementTag destination = scriptEntry.getElement("destination");
+        ObjectTag key = scriptEntry.getObjectTag("key");
+        boolean decrypt = scriptEntry.hasObject("decrypt");
+        boolean overwrite = scriptEntry.hasObject("overwrite");
+
+        if (scriptEntry.dbCallShouldDebug()) {
+            Debug.report(scriptEntry, getName(), origin, destination, decrypt ? new ElementTag("decrypt") : null, overwrite ? new ElementTag("overwrite") : null);
+        }
+
+        File originFile = new File(Denizen.getInstance().getDataFolder(), origin.asString());
+        File destinationFile = new File(Denizen.getInstance().getDataFolder(), destination.asString());
+        if (!Utilities.canReadFile(originFile)) {
+            Debug.echoError(scriptEntry, "Cannot read from that file path due to security settings in Denizen/config.yml.");
+            scriptEntry.setFinished(true);
+            return;
+        }
+        if (!Utilities.canWriteToFile(destinationFile)) {
+            Debug.echoError(scriptEntry, "Cannot write to that file path due to security settings in Denizen/config.yml.");
+            scriptEntry.setFinished(true);
+            return;
+        }
+        if (!originFile.isFile()) {
+            Debug.echoError(scriptEntry, "File '" + origin.asString() + "' does not exist.");
+            scriptEntry.setFinished(true);
+            return;
+        }
+        if (destinationFile.exists() && !overwrite) {
+            Debug.echoError(scriptEntry, "File '" + destination.asString() + "' already exists, specify 'overwrite' to replace it.");
+            scriptEntry.setFinished(true);
+            return;
+        }
+        SecretKeySpec secretKey = BinaryTagEncrypt.deriveKey(key);
+
+        AsyncExecutor.submit(scriptEntry, getName(), () -> {
+            Map<String, ObjectTag> saved = new HashMap<>();
+            saved.put("success", new ElementTag(false));
+            Path target = destinationFile.toPath();
+            Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+            try {
+                Files.createDirectories(target.toAbsolutePath().getParent());
+                long size;
+                try (FileChannel input = FileChannel.open(originFile.toPath(), StandardOpenOption.READ);
+                     FileChannel output = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    size = decrypt ? decrypt(input, output, secretKey) : encrypt(input, output, secretKey);
+                    output.force(false);
+                }
+                Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                saved.put("success", new ElementTag(true));
+                saved.put("size", new ElementTag(size));
+            }
+            catch (Throwable ex) {
+                Debug.echoError(scriptEntry, (decrypt ? "Decrypting" : "Encrypting") + " file '" + origin.asString() + "' failed: " + ex.getMessage());
+                try {
+                    Files.deleteIfExists(temporary);
+                }
+                catch (IOException ignored) {
+                }
+            }
+            finally {
+                CompletionQueue.complete(scriptEntry, saved);
+            }
+        }, () -> CompletionQueue.complete(scriptEntry));
+    }
+
+    private static long encrypt(FileChannel input, FileChannel output, SecretKeySpec key) throws IOException, GeneralSecurityException {
+        ChunkedCipher.Header header = ChunkedCipher.Header.create(ChunkedCipher.defaultChunkSize);
+        long plainSize = input.size();
+        long chunks = Math.max(1, (plainSize + header.chunkSize - 1) / header.chunkSize);
+        writeFully(output, ByteBuffer.wrap(header.bytes));
+        ByteBuffer plain = ByteBuffer.allocateDirect(header.chunkSize);
+        ByteBuffer encrypted = ByteBuffer.allocateDirect(header.encryptedChunkSize());
+        for (long i = 0; i < chunks; i++) {
+            readFully(input, plain, (int) Math.min(header.chunkSize, plainSize - i * header.chunkSize));
+            encrypted.clear();
+            header.encryptChunk(key, i, i == chunks - 1, plain, encrypted);
+            writeFully(output, encrypted.flip());
+        }
+        return output.size();
+    }
+
+    private static long decrypt(FileChannel input, FileChannel output, SecretKeySpec key) throws IOException, GeneralSecurityException {
+        ByteBuffer headerBuffer = ByteBuffer.allocate(ChunkedCipher.HEADER_SIZE);
+        input.read(headerBuffer, 0);
+        ChunkedCipher.Header header = ChunkedCipher.Header.read(headerBuffer.flip());
+        if (header == null) {
+            return decryptLegacy(input, output, key);
+        }
+        long body = input.size() - ChunkedCipher.HEADER_SIZE;
+        long chunks = Math.max(1, (body + header.encryptedChunkSize() - 1) / header.encryptedChunkSize());
+        if (body - (chunks - 1) * header.encryptedChunkSize() < ChunkedCipher.TAG_SIZE) {
+            throw new GeneralSecurityException("Truncated encrypted file");
+        }
+        input.position(ChunkedCipher.HEADER_SIZE);
+        ByteBuffer encrypted = ByteBuffer.allocateDirect(header.encryptedChunkSize());
+        ByteBuffer plain = ByteBuffer.allocateDirect(header.chunkSize);
+        for (long i = 0; i < chunks; i++) {
+            readFully(input, encrypted, (int) Math.min(header.encryptedChunkSize(), body - i * header.encryptedChunkSize()));
+            plain.clear();
+            header.decryptChunk(key, i, i == chunks - 1, encrypted, plain);
+            writeFully(output, plain.flip());
+        }
+        return output.size();
+    }
+
+    /**
+     * Decrypts a file written by BinaryTag.encrypt (a single AES/ECB message), streaming it through the cipher.
+     */
+    private static long decryptLegacy(FileChannel input, FileChannel output, SecretKeySpec key) throws IOException, GeneralSecurityException {
+        Cipher cipher = Cipher.getInstance("AES/ECB/PKCS5Padding");
+        cipher.init(Cipher.DECRYPT_MODE, key);
+        long size = input.size();
+        int chunkSize = ChunkedCipher.defaultChunkSize;
+        ByteBuffer encrypted = ByteBuffer.allocateDirect(chunkSize);
+        ByteBuffer plain = ByteBuffer.allocateDirect(chunkSize + 16);
+        input.position(0);
+        for (long position = 0; position < size; position += chunkSize) {
+            readFully(input, encrypted, (int) Math.min(chunkSize, size - position));
+            plain.clear();
+            cipher.update(encrypted, plain);
+            writeFully(output, plain.flip());
+        }
+        plain.clear();
+        cipher.doFinal(ByteBuffer.allocate(0), plain);
+        writeFully(output, plain.flip());
+        return output.size();
+    }
+
+    private static void readFully(FileChannel input, ByteBuffer buffer, int length) throws IOException {
+        buffer.clear().limit(length);
+        while (buffer.hasRemaining()) {
+            if (input.read(buffer) < 0) {
+                throw new IOException("File changed while being read");
+            }
+        }
+        buffer.flip();
+    }
+
+    private static void writeFully(FileChannel output, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            output.write(buffer);
+        }
+    }
+}
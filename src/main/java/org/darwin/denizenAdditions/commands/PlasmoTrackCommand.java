@@ -1,66 +1,105 @@
 package org.darwin.denizenAdditions.commands;
 
+import com.denizenscript.denizencore.objects.ObjectTag;
 import com.denizenscript.denizencore.objects.core.ElementTag;
+import com.denizenscript.denizencore.objects.core.ListTag;
 import com.denizenscript.denizencore.scripts.ScriptEntry;
 import com.denizenscript.denizencore.scripts.commands.AbstractCommand;
 import com.denizenscript.denizencore.scripts.commands.Holdable;
+import com.denizenscript.denizencore.scripts.commands.generator.ArgDefaultNull;
+import com.denizenscript.denizencore.scripts.commands.generator.ArgDefaultText;
 import com.denizenscript.denizencore.scripts.commands.generator.ArgLinear;
 import com.denizenscript.denizencore.scripts.commands.generator.ArgName;
+import com.denizenscript.denizencore.scripts.commands.generator.ArgPrefixed;
 import com.denizenscript.denizencore.utilities.debugging.Debug;
 import org.bukkit.Bukkit;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.event.server.PluginDisableEvent;
+import org.bukkit.event.server.PluginEnableEvent;
 import org.bukkit.plugin.Plugin;
+import org.darwin.denizenAdditions.utilities.CompletionQueue;
+import org.darwin.denizenAdditions.utilities.TrackCache;
+import org.darwin.denizenAdditions.utilities.TrackStore;
 import su.plo.voice.discs.DiscsPlugin;
 import su.plo.voice.discs.PlasmoAudioPlayerManager;
-import su.plo.voice.lavaplayer.libs.com.sedmelluq.discord.lavaplayer.track.AudioTrack;
 import su.plo.voice.lavaplayer.libs.com.sedmelluq.discord.lavaplayer.track.AudioTrackInfo;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class PlasmoTrackCommand extends AbstractCommand implements Holdable {
 
     public PlasmoTrackCommand() {
         setName("plasmotrack");
-        setSyntax("plasmotrack [<url>]");
-        setRequiredArguments(1, 1);
+        setSyntax("plasmotrack [<url>/urls:<url>|...] (parallel:<#>)");
+        setRequiredArguments(1, 2);
         autoCompile();
     }
 
     // <--[command]
     // @Name plasmotrack
-    // @Syntax plasmotrack [<url>]
+    // @Syntax plasmotrack [<url>/urls:<url>|...] (parallel:<#>)
     // @Required 1
+    // @Maximum 2
     // @Short Fetches track info from pv-addon-discs.
     // @Group external
     //
     // @Description
     // Retrieves the title and final playback URL of a track using pv-addon-discs audio manager.
+    // Results are cached (failures for a shorter time, see the "plasmotrack" config section),
+    // and requests for a URL that's already being resolved wait for that same resolve.
+    // Resolved tracks are also kept in "tracks.db" in the plugin folder (see "plasmotrack.store"), so they stay known after a restart.
+    //
+    // Use "urls:" instead of a single URL to resolve a whole list at once, for example a playlist.
+    // Up to "parallel:" URLs are resolved at the same time (defaults to the "plasmotrack.parallelism" config value),
+    // so the whole list takes about as long as its slowest few tracks.
     //
     // @Tags
     // <entry[saveName].name> returns the track title.
     // <entry[saveName].new_url> returns the resolved track URL.
     // <entry[saveName].failed> returns whether the track resolving has failed.
+    // <entry[saveName].names> returns a ListTag of the track titles, in the order of "urls:" (empty for failed tracks).
+    // <entry[saveName].new_urls> returns a ListTag of the resolved track URLs, in the order of "urls:" (the original URL for failed tracks).
+    // <entry[saveName].failed> returns, with "urls:", a ListTag of whether each track failed, in the order of "urls:".
+    //
+    // @Usage
+    // Use to load a playlist, 8 tracks at a time.
+    // - ~plasmotrack urls:<[playlist]> parallel:8 save:tracks
+    // - foreach <entry[tracks].names> as:name:
+    //   - narrate <[name]>
     // -->
-    public static void autoExecute(ScriptEntry scriptEntry,
-                                   @ArgName("url") @ArgLinear String url) {
 
-        Debug.echoDebug(scriptEntry, "Attempting to resolve track via pv-addon-discs: " + url);
+    public static int defaultParallelism = 4;
 
-        Plugin plugin = Bukkit.getPluginManager().getPlugin("pv-addon-discs");
-        if (plugin == null) {
-            Debug.echoError(scriptEntry, "pv-addon-discs plugin not found!");
+    public static void autoExecute(ScriptEntry scriptEntry,
+                                   @ArgName("url") @ArgLinear @ArgDefaultNull String url,
+                                   @ArgName("urls") @ArgPrefixed @ArgDefaultNull ListTag urls,
+                                   @ArgName("parallel") @ArgPrefixed @ArgDefaultText("0") int parallel) {
+
+        if (url == null && urls == null) {
+            Debug.echoError(scriptEntry, "Must specify a url, or a list of urls.");
             scriptEntry.setFinished(true);
             return;
         }
+        Debug.echoDebug(scriptEntry, "Attempting to resolve track via pv-addon-discs: " + (url != null ? url : urls.identify()));
 
-        if (!(plugin instanceof DiscsPlugin) && !plugin.getClass().getName().contains("DiscsPlugin")) {
-            Debug.echoDebug(scriptEntry, "pv-addon-discs loaded but plugin class is: " + plugin.getClass().getName());
+        MethodHandle getter = managerGetter;
+        if (getter == null) {
+            Debug.echoError(scriptEntry, "pv-addon-discs plugin not found!");
+            scriptEntry.setFinished(true);
+            return;
         }
 
         final PlasmoAudioPlayerManager manager;
         try {
-            manager = findAudioManager(plugin);
-        } catch (Exception e) {
+            manager = (PlasmoAudioPlayerManager) getter.invoke();
+        } catch (Throwable e) {
             Debug.echoError(scriptEntry, "Failed to obtain PlasmoAudioPlayerManager from pv-addon-discs: " + e);
             scriptEntry.setFinished(true);
             return;
@@ -72,41 +111,159 @@ public class PlasmoTrackCommand extends AbstractCommand implements Holdable {
             return;
         }
 
-        CompletableFuture<AudioTrack> future;
-        try {
-            future = manager.getTrack(url);
-        } catch (Throwable t) {
-            Debug.echoError(scriptEntry, "Exception calling getTrack: " + t);
-            scriptEntry.setFinished(true);
+        if (url == null) {
+            resolveAll(scriptEntry, manager, urls.toArray(new String[0]), parallel > 0 ? parallel : defaultParallelism);
             return;
         }
 
-        future.whenComplete((track, error) -> {
-            if (error != null || track == null) {
-                scriptEntry.saveObject("failed", new ElementTag(true));
-                scriptEntry.setFinished(true);
+        resolve(manager, url).thenAccept(resolved -> {
+            Map<String, ObjectTag> saved = new HashMap<>();
+            if (resolved.failed()) {
+                saved.put("failed", new ElementTag(true));
+                CompletionQueue.complete(scriptEntry, saved);
                 return;
             }
 
-            AudioTrackInfo info = track.getInfo();
-            scriptEntry.saveObject("name", new ElementTag(info.title != null ? info.title : ""));
-            scriptEntry.saveObject("new_url", new ElementTag(info.uri != null ? info.uri : url));
-            scriptEntry.saveObject("failed", new ElementTag(false));
+            saved.put("name", new ElementTag(resolved.title() != null ? resolved.title() : ""));
+            saved.put("new_url", new ElementTag(resolved.uri() != null ? resolved.uri() : url));
+            saved.put("failed", new ElementTag(false));
 
-            Debug.echoDebug(scriptEntry, "Loaded track: " + info.title + " (" + info.uri + ")");
-            scriptEntry.setFinished(true);
+            Debug.echoDebug(scriptEntry, "Loaded track: " + resolved.title() + " (" + resolved.uri() + ")");
+            CompletionQueue.complete(scriptEntry, saved);
         });
     }
 
-    private static PlasmoAudioPlayerManager findAudioManager(Plugin plugin) throws ReflectiveOperationException {
+    private static CompletableFuture<TrackCache.Resolved> resolve(PlasmoAudioPlayerManager manager, String url) {
+        return TrackCache.resolve(url, key -> TrackStore.lookup(key).thenCompose(stored -> {
+            if (stored != null) {
+                return CompletableFuture.completedFuture(stored);
+            }
+            return manager.getTrack(key).handle((track, error) -> {
+                TrackCache.Resolved resolved;
+                if (error != null || track == null) {
+                    resolved = new TrackCache.Resolved(null, key, true);
+                }
+                else {
+                    AudioTrackInfo info = track.getInfo();
+                    resolved = new TrackCache.Resolved(info.title, info.uri, false);
+                }
+                TrackStore.record(key, resolved);
+                return resolved;
+            });
+        }));
+    }
+
+    /**
+     * Resolves every url with at most 'parallel' resolves running at once: each finished resolve starts the next url.
+     */
+    private static void resolveAll(ScriptEntry scriptEntry, PlasmoAudioPlayerManager manager, String[] urls, int parallel) {
+        TrackCache.Resolved[] results = new TrackCache.Resolved[urls.length];
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger remaining = new AtomicInteger(urls.length);
+        Runnable finish = () -> {
+            ListTag names = new ListTag(urls.length);
+            ListTag newUrls = new ListTag(urls.length);
+            ListTag failed = new ListTag(urls.length);
+            for (int i = 0; i < urls.length; i++) {
+                TrackCache.Resolved resolved = results[i];
+                names.addObject(new ElementTag(!resolved.failed() && resolved.title() != null ? resolved.title() : ""));
+                newUrls.addObject(new ElementTag(!resolved.failed() && resolved.uri() != null ? resolved.uri() : urls[i]));
+                failed.addObject(new ElementTag(resolved.failed()));
+            }
+            Map<String, ObjectTag> saved = new HashMap<>();
+            saved.put("names", names);
+            saved.put("new_urls", newUrls);
+            saved.put("failed", failed);
+            CompletionQueue.complete(scriptEntry, saved);
+        };
+        if (urls.length == 0) {
+            finish.run();
+            return;
+        }
+        Runnable pump = new Runnable() {
+            @Override
+            public void run() {
+                // Cached urls complete right away, so keep going in this loop instead of recursing through callbacks.
+                while (true) {
+                    int index = next.getAndIncrement();
+                    if (index >= urls.length) {
+                        return;
+                    }
+                    CompletableFuture<TrackCache.Resolved> future = resolve(manager, urls[index]);
+                    if (!future.isDone()) {
+                        future.thenAccept(resolved -> {
+                            results[index] = resolved;
+                            if (remaining.decrementAndGet() == 0) {
+                                finish.run();
+                            }
+                            else {
+                                run();
+                            }
+                        });
+                        return;
+                    }
+                    results[index] = future.join();
+                    if (remaining.decrementAndGet() == 0) {
+                        finish.run();
+                        return;
+                    }
+                }
+            }
+        };
+        for (int i = 0; i < Math.min(parallel, urls.length); i++) {
+            pump.run();
+        }
+    }
+
+    private static volatile MethodHandle managerGetter;
+
+    public static class DiscsPluginListener implements Listener {
+
+        @EventHandler
+        public void onPluginEnable(PluginEnableEvent event) {
+            if (event.getPlugin().getName().equals("pv-addon-discs")) {
+                resolveManager();
+            }
+        }
+
+        @EventHandler
+        public void onPluginDisable(PluginDisableEvent event) {
+            if (event.getPlugin().getName().equals("pv-addon-discs")) {
+                managerGetter = null;
+            }
+        }
+    }
+
+    /**
+     * Finds the audio manager field of pv-addon-discs once, and keeps a getter bound to the plugin instance.
+     * Called on enable, and again whenever pv-addon-discs is (re-)enabled, so the command itself never uses reflection.
+     */
+    public static void resolveManager() {
+        Plugin plugin = Bukkit.getPluginManager().getPlugin("pv-addon-discs");
+        if (plugin == null || !plugin.isEnabled()) {
+            managerGetter = null;
+            return;
+        }
+        if (!(plugin instanceof DiscsPlugin) && !plugin.getClass().getName().contains("DiscsPlugin")) {
+            Debug.log("pv-addon-discs loaded but plugin class is: " + plugin.getClass().getName());
+        }
+        try {
+            Field field = findAudioManagerField(plugin);
+            field.setAccessible(true);
+            managerGetter = MethodHandles.lookup().unreflectGetter(field).bindTo(plugin);
+        } catch (Exception e) {
+            managerGetter = null;
+            Debug.echoError("Failed to find PlasmoAudioPlayerManager in pv-addon-discs: " + e);
+        }
+    }
+
+    private static Field findAudioManagerField(Plugin plugin) throws ReflectiveOperationException {
         Class<?> cls = plugin.getClass();
 
         for (Field f : cls.getDeclaredFields()) {
             Class<?> t = f.getType();
             if (PlasmoAudioPlayerManager.class.isAssignableFrom(t)) {
-                f.setAccessible(true);
-                Object val = f.get(plugin);
-                return (PlasmoAudioPlayerManager) val;
+                return f;
             }
         }
 
@@ -115,9 +272,8 @@ public class PlasmoTrackCommand extends AbstractCommand implements Holdable {
             try {
                 Field f = cls.getDeclaredField(name);
                 f.setAccessible(true);
-                Object val = f.get(plugin);
-                if (val instanceof PlasmoAudioPlayerManager) {
-                    return (PlasmoAudioPlayerManager) val;
+                if (f.get(plugin) instanceof PlasmoAudioPlayerManager) {
+                    return f;
                 }
             } catch (NoSuchFieldException ignored) { }
         }
@@ -126,9 +282,7 @@ public class PlasmoTrackCommand extends AbstractCommand implements Holdable {
         while (s != null && s != Object.class) {
             for (Field f : s.getDeclaredFields()) {
                 if (PlasmoAudioPlayerManager.class.isAssignableFrom(f.getType())) {
-                    f.setAccessible(true);
-                    Object val = f.get(plugin);
-                    return (PlasmoAudioPlayerManager) val;
+                    return f;
                 }
             }
             s = s.getSuperclass();
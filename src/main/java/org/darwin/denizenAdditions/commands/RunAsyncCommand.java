@@ -7,25 +7,27 @@ import com.denizenscript.denizencore.objects.core.*;
 import com.denizenscript.denizencore.scripts.ScriptEntry;
 import com.denizenscript.denizencore.scripts.commands.AbstractCommand;
 import com.denizenscript.denizencore.scripts.commands.Holdable;
-import com.denizenscript.denizencore.scripts.queues.ScriptQueue;
 import com.denizenscript.denizencore.utilities.CoreUtilities;
-import com.denizenscript.denizencore.utilities.ScriptUtilities;
 import com.denizenscript.denizencore.utilities.debugging.Debug;
+import org.darwin.denizenAdditions.utilities.AsyncExecutor;
+import org.darwin.denizenAdditions.utilities.AsyncQueue;
+import org.darwin.denizenAdditions.utilities.CompletionQueue;
+import org.darwin.denizenAdditions.utilities.CopyOnWriteDefinitions;
 
-import java.util.function.Consumer;
+import java.util.Map;
 
 public class RunAsyncCommand extends AbstractCommand implements Holdable {
 
     public RunAsyncCommand() {
         setName("run_async");
-        setSyntax("run_async [<script>] (path:<name>) (def:<element>|.../defmap:<map>/def.<name>:<value>)");
+        setSyntax("run_async [<script>] (path:<name>) (def:<element>|.../defmap:<map>/def.<name>:<value>) (timeout:<duration>) (virtual)");
         setRequiredArguments(1, -1);
         isProcedural = true;
     }
 
     // <--[command]
     // @Name Run_async
-    // @Syntax run_async [<script>] (path:<name>) (def:<element>|.../defmap:<map>/def.<name>:<value>) (id:<name>) (delay:<value>)
+    // @Syntax run_async [<script>] (path:<name>) (def:<element>|.../defmap:<map>/def.<name>:<value>) (id:<name>) (delay:<value>) (timeout:<duration>) (virtual)
     // @Required 1
     // @Maximum -1
     // @Short Runs a script in a new async queue.
@@ -52,13 +54,21 @@ public class RunAsyncCommand extends AbstractCommand implements Holdable {
     //
     // Optionally, use the "delay:" argument to specify a delay time before the script starts running.
     //
+    // Optionally, use the "timeout:" argument to stop the script once it has run for that long.
+    // The script is stopped before its next command, and its thread is interrupted so blocking calls give up.
+    //
     // Optionally, specify the "id:" argument to choose a custom queue ID to be used.
     // If none is specified, a randomly generated one will be used. Generally, don't use this argument.
     //
+    // Optionally, specify "virtual" to run the queue on its own virtual thread instead of a shared async worker.
+    // Use this for scripts that block (reading files, waiting on web requests, ...), as a blocked virtual thread doesn't hold a worker.
+    // The "run_async.virtual_threads" config value makes this the default for every run_async.
+    //
     // The run command is ~waitable. Refer to <@link language ~waitable>.
     //
     // @Tags
     // <entry[saveName].created_queue> returns the queue that was started by the run command.
+    // <entry[saveName].timed_out> returns whether the script was stopped by its timeout (only when waited for).
     //
     // @Usage
     // Use to run a task script named 'MyTask'.
@@ -73,6 +83,16 @@ public class RunAsyncCommand extends AbstractCommand implements Holdable {
     // - run_async <script> path:alt_path
     //
     // @Usage
+    // Use to run a task script named 'MyTask' that reads big files, on its own virtual thread.
+    // - ~run_async MyTask virtual
+    //
+    // @Usage
+    // Use to run 'MyTask', giving up on it after 30 seconds.
+    // - ~run_async MyTask timeout:30s save:task
+    // - if <entry[task].timed_out>:
+    //   - narrate "MyTask took too long!"
+    //
+    // @Usage
     // Use to run 'MyTask' and pass 3 definitions to it.
     // - run_async MyTask def:A|Second_Def|Taco
     //
@@ -88,6 +108,8 @@ public class RunAsyncCommand extends AbstractCommand implements Holdable {
     //
     // -->
 
+    public static boolean useVirtualThreads = false;
+
     @Override
     public void parseArgs(ScriptEntry scriptEntry) throws InvalidArgumentsException {
         MapTag defMap = new MapTag();
@@ -95,6 +117,10 @@ public class RunAsyncCommand extends AbstractCommand implements Holdable {
             if (arg.matchesPrefix("i", "id")) {
                 scriptEntry.addObject("id", arg.asElement());
             }
+            else if (!scriptEntry.hasObject("virtual")
+                    && arg.matches("virtual")) {
+                scriptEntry.addObject("virtual", new ElementTag(true));
+            }
             else if (arg.matchesPrefix("def")) {
                 scriptEntry.addObject("definitions", arg.asType(ListTag.class));
             }
@@ -106,6 +132,11 @@ public class RunAsyncCommand extends AbstractCommand implements Holdable {
                     && arg.matchesArgumentType(DurationTag.class)) {
                 scriptEntry.addObject("delay", arg.asType(DurationTag.class));
             }
+            else if (!scriptEntry.hasObject("timeout")
+                    && arg.matchesPrefix("timeout")
+                    && arg.matchesArgumentType(DurationTag.class)) {
+                scriptEntry.addObject("timeout", arg.asType(DurationTag.class));
+            }
             else if (arg.hasPrefix()
                     && arg.getPrefix().getRawValue().startsWith("def.")) {
                 defMap.putObject(arg.getPrefix().getRawValue().substring("def.".length()), arg.object);
@@ -151,10 +182,13 @@ public class RunAsyncCommand extends AbstractCommand implements Holdable {
         MapTag defMap = scriptEntry.getObjectTag("def_map");
         DurationTag delay = scriptEntry.getObjectTag("delay");
         ListTag definitions = scriptEntry.getObjectTag("definitions");
+        DurationTag timeout = scriptEntry.getObjectTag("timeout");
+        ElementTag id = scriptEntry.getElement("id");
         String path = pathElement != null ? pathElement.asString() : null;
+        boolean virtual = useVirtualThreads || scriptEntry.hasObject("virtual");
 
         if (scriptEntry.dbCallShouldDebug()) {
-            Debug.report(scriptEntry, getName(), script, pathElement, defMap, definitions);
+            Debug.report(scriptEntry, getName(), script, pathElement, defMap, definitions, timeout, virtual ? new ElementTag("virtual") : null);
         }
 
         if (path != null && !script.getContainer().containsScriptSection(path)) {
@@ -162,40 +196,35 @@ public class RunAsyncCommand extends AbstractCommand implements Holdable {
             return;
         }
 
-        Consumer<ScriptQueue> configure = (queue) -> {
-            if (delay != null) {
-                queue.delayUntil(DenizenCore.serverTimeMillis + delay.getMillis());
-            }
-            if (defMap != null) {
-                for (var val : defMap.entrySet()) {
-                    queue.addDefinition(val.getKey().str, val.getValue());
-                }
-            }
-            scriptEntry.saveObject("created_queue", new QueueTag(queue));
-            queue.procedural = scriptEntry.getResidingQueue().procedural;
-        };
+        AsyncQueue queue = AsyncQueue.forScript(script, path, scriptEntry.entryData, definitions, id != null ? id.asString() : AsyncQueue.nextId(script.getName()));
+        if (delay != null) {
+            queue.delayUntil(DenizenCore.serverTimeMillis + delay.getMillis());
+        }
+        if (defMap != null) {
+            CopyOnWriteDefinitions.shareInto(defMap, queue.getAllDefinitions());
+        }
+        if (timeout != null) {
+            queue.setTimeout(timeout.getMillis());
+        }
+        queue.procedural = scriptEntry.getResidingQueue().procedural;
+        scriptEntry.saveObject("created_queue", new QueueTag(queue));
 
         // Асинхронное выполнение
-        DenizenCore.runAsync(() -> {
+        AsyncExecutor.submit(scriptEntry, getName(), () -> {
             try {
-                ScriptQueue queue = ScriptUtilities.createAndStartQueue(
-                        script.getContainer(),
-                        path,
-                        scriptEntry.entryData,
-                        null,
-                        configure,
-                        null,
-                        null,
-                        definitions,
-                        scriptEntry);
+                queue.start(true);
             } catch (Exception e) {
                 Debug.echoError(scriptEntry, e);
             }
             finally {
                 if (scriptEntry.shouldWaitFor()) {
-                    DenizenCore.runOnMainThread(() -> scriptEntry.setFinished(true));
+                    CompletionQueue.complete(scriptEntry, Map.of("timed_out", new ElementTag(queue.isTimedOut())));
                 }
             }
-        });
+        }, () -> {
+            if (scriptEntry.shouldWaitFor()) {
+                CompletionQueue.complete(scriptEntry);
+            }
+        }, virtual);
     }
 }
@@ -0,0 +1,61 @@
+package org.darwin.denizenAdditions.tags;
+
+import com.denizenscript.denizencore.objects.core.ElementTag;
+import com.denizenscript.denizencore.objects.core.MapTag;
+import com.denizenscript.denizencore.tags.TagManager;
+import org.darwin.denizenAdditions.utilities.AdjustCoalescer;
+import org.darwin.denizenAdditions.utilities.AsyncChannel;
+import org.darwin.denizenAdditions.utilities.CompletionQueue;
+import org.darwin.denizenAdditions.utilities.FairScheduler;
+import org.darwin.denizenAdditions.utilities.ObjectResolutionCache;
+import org.darwin.denizenAdditions.utilities.TrackCache;
+import org.darwin.denizenAdditions.utilities.TrackStore;
+
+public class AsyncStatsTag {
+
+    public static void register() {
+
+        // <--[tag]
+        // @attribute <async_stats>
+        // @returns MapTag
+        // @plugin DenizenAdditions
+        // @description
+        // Returns statistics about the DenizenAdditions async systems, as a MapTag with keys:
+        // "pending_completions": the number of async results waiting to be handed back to the main thread.
+        // "resolution_cache": a MapTag of "size", "hits", "misses" and "evictions" of the async_adjust object resolution cache.
+        // "coalesced_adjusts": the number of adjusts skipped by async_adjust's "coalesce" option because a later value replaced them.
+        // "waiting_tasks": the number of async tasks waiting for a free worker.
+        // "running_tasks": the number of async tasks running on a worker.
+        // "channels": a MapTag of each open async channel's name to the number of objects waiting in it.
+        // "track_cache": a MapTag of "size", "in_flight", "hits", "misses", "joined" (requests that waited on a resolve already running) and "evictions" of the plasmotrack cache, plus "stored" (tracks loaded from or written to tracks.db).
+        // -->
+        TagManager.registerTagHandler(MapTag.class, "async_stats", (attribute) -> {
+            MapTag result = new MapTag();
+            result.putObject("pending_completions", new ElementTag(CompletionQueue.size()));
+            MapTag resolutionCache = new MapTag();
+            resolutionCache.putObject("size", new ElementTag(ObjectResolutionCache.size()));
+            resolutionCache.putObject("hits", new ElementTag(ObjectResolutionCache.getHits()));
+            resolutionCache.putObject("misses", new ElementTag(ObjectResolutionCache.getMisses()));
+            resolutionCache.putObject("evictions", new ElementTag(ObjectResolutionCache.getEvictions()));
+            result.putObject("resolution_cache", resolutionCache);
+            result.putObject("coalesced_adjusts", new ElementTag(AdjustCoalescer.getCoalesced()));
+            result.putObject("waiting_tasks", new ElementTag(FairScheduler.getTotalWaiting()));
+            result.putObject("running_tasks", new ElementTag(FairScheduler.getTotalRunning()));
+            MapTag channels = new MapTag();
+            for (AsyncChannel channel : AsyncChannel.getAll().values()) {
+                channels.putObject(channel.name, new ElementTag(channel.size()));
+            }
+            result.putObject("channels", channels);
+            MapTag trackCache = new MapTag();
+            trackCache.putObject("size", new ElementTag(TrackCache.size()));
+            trackCache.putObject("in_flight", new ElementTag(TrackCache.getInFlight()));
+            trackCache.putObject("hits", new ElementTag(TrackCache.getHits()));
+            trackCache.putObject("misses", new ElementTag(TrackCache.getMisses()));
+            trackCache.putObject("joined", new ElementTag(TrackCache.getJoined()));
+            trackCache.putObject("evictions", new ElementTag(TrackCache.getEvictions()));
+            trackCache.putObject("stored", new ElementTag(TrackStore.size()));
+            result.putObject("track_cache", trackCache);
+            return result;
+        });
+    }
+}
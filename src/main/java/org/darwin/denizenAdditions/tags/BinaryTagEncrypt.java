@@ -3,11 +3,15 @@ package org.darwin.denizenAdditions.tags;
 import com.denizenscript.denizencore.objects.ObjectTag;
 import com.denizenscript.denizencore.objects.core.BinaryTag;
 import com.denizenscript.denizencore.objects.core.SecretTag;
+import org.darwin.denizenAdditions.utilities.ChunkedCipher;
 
 import javax.crypto.Cipher;
 import javax.crypto.spec.SecretKeySpec;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class BinaryTagEncrypt {
 
@@ -54,31 +58,207 @@ public class BinaryTagEncrypt {
                 return null;
             }
         });
+
+        // <--[tag]
+        // @attribute <BinaryTag.encrypt_chunked[<key>]>
+        // @returns BinaryTag
+        // @plugin DenizenAdditions
+        // @description
+        // Encrypts the contents of the BinaryTag using AES-GCM with the specified key, in a chunked format meant for large data.
+        // The data is split into chunks (see the "encryption.chunk_size" config value), which are encrypted on all worker cores at once.
+        // Unlike <@link tag BinaryTag.encrypt>, the result is authenticated: any change to it makes decrypting fail.
+        // Decrypt with <@link tag BinaryTag.decrypt_chunked>.
+        // -->
+        BinaryTag.tagProcessor.registerStaticTag(BinaryTag.class, "encrypt_chunked", (attribute, object) -> {
+            if (!attribute.hasParam()) {
+                attribute.echoError("BinaryTag.encrypt_chunked[...] requires a key!");
+                return null;
+            }
+            try {
+                return new BinaryTag(encryptChunked(object.data, attribute.getParamObject()));
+            }
+            catch (Exception ex) {
+                attribute.echoError("Encryption failed: " + ex.getMessage());
+                return null;
+            }
+        });
+
+        // <--[tag]
+        // @attribute <BinaryTag.decrypt_chunked[<key>]>
+        // @returns BinaryTag
+        // @plugin DenizenAdditions
+        // @description
+        // Decrypts data encrypted by <@link tag BinaryTag.encrypt_chunked>, using the specified key, on all worker cores at once.
+        // Data encrypted by <@link tag BinaryTag.encrypt> is recognized and decrypted the old way, so stored data can move to the new format gradually.
+        // -->
+        BinaryTag.tagProcessor.registerStaticTag(BinaryTag.class, "decrypt_chunked", (attribute, object) -> {
+            if (!attribute.hasParam()) {
+                attribute.echoError("BinaryTag.decrypt_chunked[...] requires a key!");
+                return null;
+            }
+            try {
+                return new BinaryTag(decryptChunked(object.data, attribute.getParamObject()));
+            }
+            catch (Exception ex) {
+                attribute.echoError("Decryption failed: " + ex.getMessage());
+                return null;
+            }
+        });
     }
 
     // ===== Crypto helpers =====
 
-    private static SecretKeySpec normalizeKey(ObjectTag key) throws Exception {
-        String keyValue = key.shouldBeType(SecretTag.class) ? ((SecretTag) key).getValue() : key.toString();
+    /**
+     * Pooled crypto objects, so tags on async queues never share (or re-create) a Cipher or MessageDigest.
+     * They're pooled rather than per-thread, as virtual threads are never reused and would make a new set every call.
+     * Each remembers the digest of the last key it derived and the key and mode its cipher was initialized with,
+     * so repeated calls with the same key skip the cipher re-init, at the cost of one hash.
+     * Only the digest is kept, never the key text, so the pool holds no plaintext secrets.
+     */
+    private static class Crypto {
+
+        final MessageDigest sha;
+
+        final Cipher cipher;
+
+        byte[] lastDigest;
 
-        MessageDigest sha = MessageDigest.getInstance("SHA-256");
-        byte[] hash = sha.digest(keyValue.getBytes(StandardCharsets.UTF_8));
-        byte[] keyBytes = new byte[16];
-        System.arraycopy(hash, 0, keyBytes, 0, 16); // 128-bit key
-        return new SecretKeySpec(keyBytes, "AES");
+        SecretKeySpec lastKey;
+
+        SecretKeySpec initKey;
+
+        int initMode;
+
+        Crypto() {
+            try {
+                sha = MessageDigest.getInstance("SHA-256");
+                cipher = Cipher.getInstance("AES/ECB/PKCS5Padding");
+            }
+            catch (Exception ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+
+        SecretKeySpec keyFor(String keyValue) {
+            byte[] raw = keyValue.getBytes(StandardCharsets.UTF_8);
+            byte[] hash = sha.digest(raw);
+            Arrays.fill(raw, (byte) 0);
+            if (!MessageDigest.isEqual(hash, lastDigest)) {
+                byte[] keyBytes = new byte[16];
+                System.arraycopy(hash, 0, keyBytes, 0, 16); // 128-bit key
+                lastKey = new SecretKeySpec(keyBytes, "AES");
+                lastDigest = hash;
+            }
+            return lastKey;
+        }
+
+        Cipher cipherFor(int mode, SecretKeySpec key) throws Exception {
+            if (initKey != key || initMode != mode) {
+                initKey = null;
+                cipher.init(mode, key);
+                initKey = key;
+                initMode = mode;
+            }
+            return cipher;
+        }
+    }
+
+    private static final int MAX_POOLED = 64;
+
+    private static final ConcurrentLinkedQueue<Crypto> pool = new ConcurrentLinkedQueue<>();
+
+    private static final AtomicInteger pooled = new AtomicInteger();
+
+    private static Crypto borrow() {
+        Crypto crypto = pool.poll();
+        if (crypto == null) {
+            return new Crypto();
+        }
+        pooled.decrementAndGet();
+        return crypto;
+    }
+
+    private static void release(Crypto crypto) {
+        if (pooled.incrementAndGet() <= MAX_POOLED) {
+            pool.add(crypto);
+        }
+        else {
+            pooled.decrementAndGet();
+        }
+    }
+
+    private static String keyValue(ObjectTag key) {
+        return key.shouldBeType(SecretTag.class) ? ((SecretTag) key).getValue() : key.toString();
+    }
+
+    /**
+     * Returns the AES key for a key object (a SecretTag or plain text), as used by every encrypt/decrypt tag.
+     */
+    public static SecretKeySpec deriveKey(ObjectTag key) {
+        return deriveKey(keyValue(key));
+    }
+
+    static SecretKeySpec deriveKey(String keyValue) {
+        Crypto crypto = borrow();
+        try {
+            return crypto.keyFor(keyValue);
+        }
+        finally {
+            release(crypto);
+        }
+    }
+
+    /**
+     * Encrypts in the chunked format, as BinaryTag.encrypt_chunked does.
+     */
+    public static byte[] encryptChunked(byte[] data, ObjectTag key) throws Exception {
+        return ChunkedCipher.encrypt(data, deriveKey(key), ChunkedCipher.defaultChunkSize);
+    }
+
+    /**
+     * Decrypts the chunked format, or the old single-message format, as BinaryTag.decrypt_chunked does.
+     */
+    public static byte[] decryptChunked(byte[] data, ObjectTag key) throws Exception {
+        return decryptChunked(data, keyValue(key));
+    }
+
+    static byte[] decryptChunked(byte[] data, String keyValue) throws Exception {
+        if (!ChunkedCipher.isChunked(data)) {
+            return decrypt(data, keyValue);
+        }
+        return ChunkedCipher.decrypt(data, deriveKey(keyValue));
     }
 
     private static byte[] encrypt(byte[] data, ObjectTag key) throws Exception {
-        SecretKeySpec secretKey = normalizeKey(key);
-        Cipher cipher = Cipher.getInstance("AES/ECB/PKCS5Padding");
-        cipher.init(Cipher.ENCRYPT_MODE, secretKey);
-        return cipher.doFinal(data);
+        return encrypt(data, keyValue(key));
     }
 
     private static byte[] decrypt(byte[] encrypted, ObjectTag key) throws Exception {
-        SecretKeySpec secretKey = normalizeKey(key);
-        Cipher cipher = Cipher.getInstance("AES/ECB/PKCS5Padding");
-        cipher.init(Cipher.DECRYPT_MODE, secretKey);
-        return cipher.doFinal(encrypted);
+        return decrypt(encrypted, keyValue(key));
+    }
+
+    static byte[] encrypt(byte[] data, String keyValue) throws Exception {
+        Crypto crypto = borrow();
+        try {
+            return crypto.cipherFor(Cipher.ENCRYPT_MODE, crypto.keyFor(keyValue)).doFinal(data);
+        }
+        finally {
+            release(crypto);
+        }
+    }
+
+    static byte[] decrypt(byte[] encrypted, String keyValue) throws Exception {
+        Crypto crypto = borrow();
+        try {
+            return crypto.cipherFor(Cipher.DECRYPT_MODE, crypto.keyFor(keyValue)).doFinal(encrypted);
+        }
+        catch (Exception ex) {
+            // A failed doFinal may leave the cipher in an unknown state, so make the next call init it again.
+            crypto.initKey = null;
+            throw ex;
+        }
+        finally {
+            release(crypto);
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,112 @@
+package org.darwin.denizenAdditions.tags;
+
+import com.denizenscript.denizen.objects.EntityTag;
+import com.denizenscript.denizen.objects.PlayerTag;
+import com.denizenscript.denizen.objects.properties.item.ItemPotion;
+import com.denizenscript.denizencore.objects.core.ElementTag;
+import com.denizenscript.denizencore.objects.core.MapTag;
+import com.denizenscript.denizencore.tags.Attribute;
+import org.bukkit.potion.PotionEffect;
+import org.bukkit.potion.PotionEffectType;
+import org.darwin.denizenAdditions.utilities.EntitySnapshots;
+
+public class EntityTagSnapshot {
+
+    public static void register() {
+
+        // <--[tag]
+        // @attribute <EntityTag.has_snapshot>
+        // @returns ElementTag(Boolean)
+        // @plugin DenizenAdditions
+        // @description
+        // Returns whether there is a snapshot of the entity, taken at the start of the current or last tick.
+        // Snapshots are only taken for entities added with <@link command entity_snapshot> (and every online player, if the "snapshots.all_players" config value is true).
+        // All "snapshot_" tags are safe to read from async queues.
+        // -->
+        EntityTag.tagProcessor.registerTag(ElementTag.class, "has_snapshot", (attribute, entity) -> {
+            return new ElementTag(EntitySnapshots.get(entity.getUUID()) != null);
+        });
+
+        // <--[tag]
+        // @attribute <EntityTag.snapshot_effect[<effect>]>
+        // @returns MapTag
+        // @plugin DenizenAdditions
+        // @description
+        // Returns the potion effect MapTag the entity had when its snapshot was taken, like <@link tag EntityTag.effect>.
+        // Returns null if the entity had no such effect.
+        // -->
+        EntityTag.tagProcessor.registerTag(MapTag.class, "snapshot_effect", (attribute, entity) -> {
+            if (!attribute.hasParam()) {
+                attribute.echoError("The effect must be specified.");
+                return null;
+            }
+            PotionEffectType effectType = PotionEffectType.getByName(attribute.getParam());
+            if (effectType == null) {
+                attribute.echoError("Invalid effect type specified: " + attribute.getParam());
+                return null;
+            }
+            EntitySnapshots.Snapshot snapshot = getSnapshot(attribute, entity);
+            if (snapshot == null) {
+                return null;
+            }
+            PotionEffect effect = snapshot.effects().get(effectType);
+            if (effect == null) {
+                return null;
+            }
+            return ItemPotion.effectToMap(effect, true);
+        });
+
+        // <--[tag]
+        // @attribute <EntityTag.snapshot_thrower>
+        // @returns PlayerTag
+        // @plugin DenizenAdditions
+        // @description
+        // Returns the thrower of the dropped item entity when its snapshot was taken, like <@link property EntityTag.thrower>.
+        // -->
+        EntityTag.tagProcessor.registerTag(PlayerTag.class, "snapshot_thrower", (attribute, entity) -> {
+            EntitySnapshots.Snapshot snapshot = getSnapshot(attribute, entity);
+            if (snapshot == null || snapshot.thrower() == null) {
+                return null;
+            }
+            return new PlayerTag(snapshot.thrower());
+        });
+
+        // <--[tag]
+        // @attribute <EntityTag.snapshot_item_owner>
+        // @returns PlayerTag
+        // @plugin DenizenAdditions
+        // @description
+        // Returns the owner of the dropped item entity when its snapshot was taken, like <@link property EntityTag.item_owner>.
+        // -->
+        EntityTag.tagProcessor.registerTag(PlayerTag.class, "snapshot_item_owner", (attribute, entity) -> {
+            EntitySnapshots.Snapshot snapshot = getSnapshot(attribute, entity);
+            if (snapshot == null || snapshot.owner() == null) {
+                return null;
+            }
+            return new PlayerTag(snapshot.owner());
+        });
+
+        // <--[tag]
+        // @attribute <EntityTag.snapshot_freeze_locked>
+        // @returns ElementTag(Boolean)
+        // @plugin Paper, DenizenAdditions
+        // @description
+        // Returns whether the entity's freeze duration was locked when its snapshot was taken, like <@link property EntityTag.freeze_locked>.
+        // -->
+        EntityTag.tagProcessor.registerTag(ElementTag.class, "snapshot_freeze_locked", (attribute, entity) -> {
+            EntitySnapshots.Snapshot snapshot = getSnapshot(attribute, entity);
+            if (snapshot == null) {
+                return null;
+            }
+            return new ElementTag(snapshot.freezeLocked());
+        });
+    }
+
+    private static EntitySnapshots.Snapshot getSnapshot(Attribute attribute, EntityTag entity) {
+        EntitySnapshots.Snapshot snapshot = EntitySnapshots.get(entity.getUUID());
+        if (snapshot == null) {
+            attribute.echoError("Entity " + entity.getUUID() + " has no snapshot. Use the entity_snapshot command first.");
+        }
+        return snapshot;
+    }
+}
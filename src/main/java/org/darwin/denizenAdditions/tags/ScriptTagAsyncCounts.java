@@ -0,0 +1,34 @@
+package org.darwin.denizenAdditions.tags;
+
+import com.denizenscript.denizencore.objects.core.ElementTag;
+import com.denizenscript.denizencore.objects.core.ScriptTag;
+import com.denizenscript.denizencore.utilities.CoreUtilities;
+import org.darwin.denizenAdditions.utilities.FairScheduler;
+
+public class ScriptTagAsyncCounts {
+
+    public static void register() {
+
+        // <--[tag]
+        // @attribute <ScriptTag.async_waiting>
+        // @returns ElementTag(Number)
+        // @plugin DenizenAdditions
+        // @description
+        // Returns the number of async tasks started from this script (by async, run_async, async_adjust, ...) that are waiting for a free worker.
+        // -->
+        ScriptTag.tagProcessor.registerTag(ElementTag.class, "async_waiting", (attribute, script) -> {
+            return new ElementTag(FairScheduler.getWaiting(CoreUtilities.toLowerCase(script.getName())));
+        });
+
+        // <--[tag]
+        // @attribute <ScriptTag.async_running>
+        // @returns ElementTag(Number)
+        // @plugin DenizenAdditions
+        // @description
+        // Returns the number of async tasks started from this script that are currently running on a worker.
+        // -->
+        ScriptTag.tagProcessor.registerTag(ElementTag.class, "async_running", (attribute, script) -> {
+            return new ElementTag(FairScheduler.getRunning(CoreUtilities.toLowerCase(script.getName())));
+        });
+    }
+}
@@ -0,0 +1,90 @@
+package org.darwin.denizenAdditions.utilities;
+
+import com.denizenscript.denizencore.utilities.debugging.Debug;
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects adjusts from any thread and applies them on the main thread once per tick.
+ * Adjusts are keyed by (object identity, mechanism), so only the last value set for a key within a tick is applied.
+ * Only adjusts of unique server state belong here: non-unique copies with the same identity are still separate objects.
+ * Callbacks registered with 'afterFlush' run after every adjust submitted before them has been applied.
+ */
+public class AdjustCoalescer {
+
+    private record Key(String identity, String mechanism) {
+    }
+
+    private static Map<Key, Runnable> pending = new LinkedHashMap<>();
+
+    private static List<Runnable> callbacks = new ArrayList<>();
+
+    private static long coalesced = 0;
+
+    private static BukkitTask flushTask;
+
+    public static void start(Plugin plugin) {
+        stop();
+        flushTask = Bukkit.getScheduler().runTaskTimer(plugin, AdjustCoalescer::flush, 1, 1);
+    }
+
+    public static void stop() {
+        if (flushTask != null) {
+            flushTask.cancel();
+            flushTask = null;
+            flush();
+        }
+    }
+
+    public static synchronized void submit(String identity, String mechanism, Runnable adjust) {
+        Key key = new Key(identity, mechanism);
+        if (pending.remove(key) != null) {
+            coalesced++;
+        }
+        pending.put(key, adjust);
+    }
+
+    public static synchronized void afterFlush(Runnable callback) {
+        callbacks.add(callback);
+    }
+
+    public static synchronized long getCoalesced() {
+        return coalesced;
+    }
+
+    public static void flush() {
+        Map<Key, Runnable> adjusts;
+        List<Runnable> toCall;
+        synchronized (AdjustCoalescer.class) {
+            if (pending.isEmpty() && callbacks.isEmpty()) {
+                return;
+            }
+            adjusts = pending;
+            toCall = callbacks;
+            pending = new LinkedHashMap<>();
+            callbacks = new ArrayList<>();
+        }
+        for (Runnable adjust : adjusts.values()) {
+            try {
+                adjust.run();
+            }
+            catch (Throwable ex) {
+                Debug.echoError(ex);
+            }
+        }
+        for (Runnable callback : toCall) {
+            try {
+                callback.run();
+            }
+            catch (Throwable ex) {
+                Debug.echoError(ex);
+            }
+        }
+    }
+}
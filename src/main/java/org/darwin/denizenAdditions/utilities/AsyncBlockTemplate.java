@@ -0,0 +1,92 @@
+package org.darwin.denizenAdditions.utilities;
+
+import com.denizenscript.denizencore.DenizenCore;
+import com.denizenscript.denizencore.scripts.ScriptEntry;
+import com.denizenscript.denizencore.scripts.ScriptEntryData;
+import com.denizenscript.denizencore.scripts.commands.BracedCommand;
+import com.denizenscript.denizencore.scripts.queues.ScriptQueue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * A braced block split and parsed once per script entry, then instantiated for every run.
+ * Only the parse is cached: each run still makes a shallow clone of every top-level entry and of its entry data,
+ * so instantiating costs one clone per entry, but never re-parses arguments (the clones share the parsed entry internals).
+ */
+public class AsyncBlockTemplate {
+
+    private static final Map<Object, AsyncBlockTemplate> cache = Collections.synchronizedMap(new WeakHashMap<>());
+
+    public static AsyncBlockTemplate forEntry(ScriptEntry scriptEntry) {
+        AsyncBlockTemplate template = cache.get(scriptEntry.internal);
+        if (template == null) {
+            List<BracedCommand.BracedData> braces = BracedCommand.getBracedCommands(scriptEntry);
+            if (braces == null || braces.isEmpty()) {
+                return null;
+            }
+            template = new AsyncBlockTemplate(braces.getFirst().value);
+            cache.put(scriptEntry.internal, template);
+        }
+        return template;
+    }
+
+    private final List<ScriptEntry> entries;
+
+    private AsyncBlockTemplate(List<ScriptEntry> source) {
+        List<ScriptEntry> prototypes = new ArrayList<>(source.size());
+        for (int i = 0; i < source.size(); i++) {
+            ScriptEntry prototype = source.get(i).clone();
+            // Don't keep the first run's queue or player/npc alive through the cache.
+            prototype.queue = null;
+            prototype.entryData = DenizenCore.implementation.getEmptyScriptEntryData();
+            prototype.entryData.scriptEntry = prototype;
+            prototype.updateContext();
+            prototypes.add(prototype);
+        }
+        entries = Collections.unmodifiableList(prototypes);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Creates the entries for one run of the block, in O(entries).
+     * Every entry gets its own shallow copy of the parent's entry data, as entry data points back at its entry and so can't be shared.
+     */
+    public List<ScriptEntry> instantiate(ScriptEntry parent, ScriptQueue queue) {
+        ScriptEntryData overlay = overlayFor(parent);
+        List<ScriptEntry> result = new ArrayList<>(entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            result.add(instantiate(i, queue, overlay));
+        }
+        return result;
+    }
+
+    /**
+     * Creates only the top-level entry at the given index, for commands that run each entry of the block separately.
+     */
+    public ScriptEntry instantiate(ScriptEntry parent, ScriptQueue queue, int index) {
+        return instantiate(index, queue, overlayFor(parent));
+    }
+
+    private ScriptEntry instantiate(int index, ScriptQueue queue, ScriptEntryData overlay) {
+        ScriptEntry newEntry = entries.get(index).clone();
+        newEntry.queue = queue;
+        newEntry.entryData = overlay.clone();
+        newEntry.entryData.scriptEntry = newEntry;
+        newEntry.updateContext();
+        return newEntry;
+    }
+
+    // Only ever cloned, never written to, so the parent's own data can be used as is.
+    private static ScriptEntryData overlayFor(ScriptEntry parent) {
+        return parent.entryData == null
+                ? DenizenCore.implementation.getEmptyScriptEntryData()
+                : parent.entryData;
+    }
+}
@@ -0,0 +1,317 @@
+package org.darwin.denizenAdditions.utilities;
+
+import com.denizenscript.denizencore.objects.ObjectTag;
+import com.denizenscript.denizencore.utilities.CoreUtilities;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * A named, bounded channel for passing objects between queues on any thread.
+ * Items live in a lock-free multi-producer/multi-consumer ring buffer (Vyukov's bounded queue): every slot has a sequence number
+ * that tells producers and consumers whose turn it is, so neither side ever takes a lock.
+ * Threads that have to wait park themselves, and the main thread waits by leaving a callback instead; either way they're
+ * woken by the next send/receive (or close), so nothing polls. A parked thread always has a deadline, so a pipeline whose
+ * other end never runs can't hold a worker forever.
+ */
+public class AsyncChannel {
+
+    public static int defaultCapacity = 256;
+
+    public static long defaultTimeoutMillis = 30_000;
+
+    private static final int MAX_CAPACITY = 1 << 20;
+
+    private static final ConcurrentHashMap<String, AsyncChannel> channels = new ConcurrentHashMap<>();
+
+    public static AsyncChannel get(String name, int capacity) {
+        return channels.computeIfAbsent(CoreUtilities.toLowerCase(name), key -> new AsyncChannel(key, capacity > 0 ? capacity : defaultCapacity));
+    }
+
+    public static AsyncChannel find(String name) {
+        return channels.get(CoreUtilities.toLowerCase(name));
+    }
+
+    public static Map<String, AsyncChannel> getAll() {
+        return Collections.unmodifiableMap(channels);
+    }
+
+    public final String name;
+
+    private final int mask;
+
+    private final AtomicLongArray sequences;
+
+    private final AtomicReferenceArray<ObjectTag> items;
+
+    private final AtomicLong enqueuePosition = new AtomicLong(), dequeuePosition = new AtomicLong();
+
+    private final ConcurrentLinkedQueue<Runnable> receiveWaiters = new ConcurrentLinkedQueue<>(), sendWaiters = new ConcurrentLinkedQueue<>();
+
+    private volatile boolean closed = false;
+
+    private AsyncChannel(String name, int capacity) {
+        this.name = name;
+        int size = Integer.highestOneBit(Math.min(MAX_CAPACITY, Math.max(2, capacity) * 2 - 1));
+        mask = size - 1;
+        sequences = new AtomicLongArray(size);
+        items = new AtomicReferenceArray<>(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    public int size() {
+        long size = enqueuePosition.get() - dequeuePosition.get();
+        return (int) Math.max(0, Math.min(size, capacity()));
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Whether the channel is closed and every item was received, so no receive can ever succeed again.
+     */
+    public boolean isDone() {
+        return closed && size() == 0;
+    }
+
+    /**
+     * Closes the channel: sends fail from now on, and receivers get what's left, then see the channel as done.
+     */
+    public void close() {
+        closed = true;
+        wakeAll(receiveWaiters);
+        wakeAll(sendWaiters);
+        if (size() == 0) {
+            forget();
+        }
+    }
+
+    /**
+     * Removes the channel from the registry once it's done, so the name can be used for a new channel.
+     */
+    public void forget() {
+        if (isDone()) {
+            channels.remove(name, this);
+        }
+    }
+
+    /**
+     * Adds the item if there's room, without waiting.
+     */
+    public boolean offer(ObjectTag item) {
+        if (closed) {
+            return false;
+        }
+        long position = enqueuePosition.get();
+        while (true) {
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (enqueuePosition.compareAndSet(position, position + 1)) {
+                    items.set(index, item);
+                    sequences.set(index, position + 1);
+                    wakeAll(receiveWaiters);
+                    return true;
+                }
+                position = enqueuePosition.get();
+            }
+            else if (difference < 0) {
+                return false;
+            }
+            else {
+                position = enqueuePosition.get();
+            }
+        }
+    }
+
+    /**
+     * Takes the oldest item, or returns null if the channel is empty, without waiting.
+     */
+    public ObjectTag poll() {
+        long position = dequeuePosition.get();
+        while (true) {
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - (position + 1);
+            if (difference == 0) {
+                if (dequeuePosition.compareAndSet(position, position + 1)) {
+                    ObjectTag item = items.get(index);
+                    items.set(index, null);
+                    sequences.set(index, position + mask + 1);
+                    wakeAll(sendWaiters);
+                    return item;
+                }
+                position = dequeuePosition.get();
+            }
+            else if (difference < 0) {
+                return null;
+            }
+            else {
+                position = dequeuePosition.get();
+            }
+        }
+    }
+
+    /**
+     * Adds the item, parking the current thread while the channel is full.
+     * Returns false if the channel is closed, the timeout passed (a timeout of 0 doesn't wait at all), or the thread was interrupted.
+     */
+    public boolean put(ObjectTag item, long timeoutNanos) {
+        long deadline = System.nanoTime() + timeoutNanos;
+        Thread thread = Thread.currentThread();
+        Runnable waiter = () -> LockSupport.unpark(thread);
+        while (true) {
+            if (offer(item)) {
+                return true;
+            }
+            if (closed) {
+                return false;
+            }
+            sendWaiters.add(waiter);
+            boolean sent = offer(item);
+            if (sent || !park(deadline)) {
+                sendWaiters.remove(waiter);
+                return sent;
+            }
+            sendWaiters.remove(waiter);
+        }
+    }
+
+    /**
+     * Takes the oldest item, parking the current thread while the channel is empty.
+     * Returns null if the channel is done, the timeout passed (a timeout of 0 doesn't wait at all), or the thread was interrupted.
+     */
+    public ObjectTag take(long timeoutNanos) {
+        long deadline = System.nanoTime() + timeoutNanos;
+        Thread thread = Thread.currentThread();
+        Runnable waiter = () -> LockSupport.unpark(thread);
+        while (true) {
+            ObjectTag item = poll();
+            if (item != null || isDone()) {
+                return item;
+            }
+            receiveWaiters.add(waiter);
+            item = poll();
+            if (item != null || isDone() || !park(deadline)) {
+                receiveWaiters.remove(waiter);
+                return item;
+            }
+            receiveWaiters.remove(waiter);
+        }
+    }
+
+    private static boolean park(long deadline) {
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+            return false;
+        }
+        LockSupport.parkNanos(remaining);
+        if (Thread.interrupted()) {
+            // Keep the flag for the queue's own timeout handling.
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return true;
+    }
+
+    private class LaterReceive implements Runnable {
+
+        private final Consumer<ObjectTag> callback;
+
+        private final Runnable waiter = () -> CompletionQueue.submit(this);
+
+        private boolean done = false;
+
+        private LaterReceive(Consumer<ObjectTag> callback) {
+            this.callback = callback;
+        }
+
+        @Override
+        public void run() {
+            if (done) {
+                return;
+            }
+            ObjectTag item = poll();
+            if (item == null && !isDone()) {
+                receiveWaiters.add(waiter);
+                item = poll();
+                if (item == null && !isDone()) {
+                    return;
+                }
+                receiveWaiters.remove(waiter);
+            }
+            done = true;
+            callback.accept(item);
+        }
+
+        private boolean cancel() {
+            if (done) {
+                return false;
+            }
+            done = true;
+            receiveWaiters.remove(waiter);
+            return true;
+        }
+    }
+
+    /**
+     * For the main thread: calls 'callback' with the next item once there is one, or with null if the channel is done, without blocking.
+     * If the channel is empty, the next send schedules another try for the next tick, so the callback always runs on the main thread.
+     * The returned function cancels the receive (from the main thread), returning false if the callback already ran.
+     */
+    public BooleanSupplier receiveLater(Consumer<ObjectTag> callback) {
+        LaterReceive receive = new LaterReceive(callback);
+        receive.run();
+        return receive::cancel;
+    }
+
+    /**
+     * For the main thread: calls 'callback' with true once the item was added, or with false if the channel was closed first, without blocking.
+     */
+    public void sendLater(ObjectTag item, Consumer<Boolean> callback) {
+        new Runnable() {
+            private final Runnable waiter = () -> CompletionQueue.submit(this);
+
+            private boolean done = false;
+
+            @Override
+            public void run() {
+                if (done) {
+                    return;
+                }
+                boolean sent = offer(item);
+                if (!sent && !closed) {
+                    sendWaiters.add(waiter);
+                    sent = offer(item);
+                    if (!sent && !closed) {
+                        return;
+                    }
+                    sendWaiters.remove(waiter);
+                }
+                done = true;
+                callback.accept(sent);
+            }
+        }.run();
+    }
+
+    private static void wakeAll(ConcurrentLinkedQueue<Runnable> waiters) {
+        Runnable waiter;
+        while ((waiter = waiters.poll()) != null) {
+            waiter.run();
+        }
+    }
+}
@@ -0,0 +1,371 @@
+package org.darwin.denizenAdditions.utilities;
+
+import com.denizenscript.denizencore.scripts.ScriptEntry;
+import com.denizenscript.denizencore.utilities.debugging.Debug;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class AsyncExecutor {
+
+    public enum OverflowPolicy { REJECT, CALLER_RUNS, DROP_OLDEST }
+
+    public static class AsyncTask implements Runnable {
+
+        public final String command;
+        public final Runnable task;
+        public final Runnable onDropped;
+
+        public AsyncTask(String command, Runnable task, Runnable onDropped) {
+            this.command = command;
+            this.task = task;
+            this.onDropped = onDropped;
+        }
+
+        @Override
+        public void run() {
+            try {
+                task.run();
+            }
+            finally {
+                counterFor(command).decrementAndGet();
+            }
+        }
+
+        public void drop() {
+            counterFor(command).decrementAndGet();
+            if (onDropped != null) {
+                onDropped.run();
+            }
+        }
+    }
+
+    private static volatile ThreadPoolExecutor executor;
+
+    // Set once the plugin shuts the workers down, so late tasks are rejected instead of starting a pool nothing would stop.
+    private static volatile boolean stopped = false;
+
+    private static ForkJoinPool forkJoinPool;
+
+    private static ExecutorService virtualExecutor;
+
+    private static ThreadPoolExecutor fileExecutor;
+
+    private static ScheduledThreadPoolExecutor watchdog;
+
+    private static int parallelism;
+
+    private static int fileThreads = 4;
+
+    private static OverflowPolicy overflowPolicy = OverflowPolicy.CALLER_RUNS;
+
+    private static Map<String, Integer> commandLimits = new HashMap<>();
+
+    private static final ConcurrentHashMap<String, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+
+    public static synchronized void configure(ConfigurationSection config) {
+        int poolSize = 4;
+        int queueSize = 1024;
+        int newParallelism = Runtime.getRuntime().availableProcessors();
+        int newFileThreads = 4;
+        OverflowPolicy policy = OverflowPolicy.CALLER_RUNS;
+        Map<String, Integer> limits = new HashMap<>();
+        ConfigurationSection fairConfig = null;
+        if (config != null) {
+            fairConfig = config.getConfigurationSection("fair");
+            poolSize = Math.max(1, config.getInt("pool_size", poolSize));
+            queueSize = Math.max(1, config.getInt("queue_size", queueSize));
+            int configParallelism = config.getInt("parallelism", 0);
+            if (configParallelism > 0) {
+                newParallelism = configParallelism;
+            }
+            newFileThreads = Math.max(1, config.getInt("file_threads", newFileThreads));
+            String policyName = config.getString("overflow_policy", policy.name());
+            try {
+                policy = OverflowPolicy.valueOf(policyName.toUpperCase());
+            }
+            catch (IllegalArgumentException ex) {
+                Debug.echoError("Invalid async overflow_policy '" + policyName + "', using " + policy.name() + ".");
+            }
+            ConfigurationSection limitSection = config.getConfigurationSection("command_limits");
+            if (limitSection != null) {
+                for (String command : limitSection.getKeys(false)) {
+                    limits.put(command.toLowerCase(), limitSection.getInt(command, -1));
+                }
+            }
+        }
+        stopPools();
+        AtomicInteger threadId = new AtomicInteger();
+        ThreadPoolExecutor newExecutor = new ThreadPoolExecutor(poolSize, poolSize, 30, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueSize), runnable -> {
+            Thread thread = new Thread(runnable, "DenizenAdditions-Async-" + threadId.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+        newExecutor.allowCoreThreadTimeOut(true);
+        overflowPolicy = policy;
+        commandLimits = limits;
+        parallelism = newParallelism;
+        fileThreads = newFileThreads;
+        FairScheduler.configure(fairConfig, queueSize);
+        executor = newExecutor;
+        stopped = false;
+    }
+
+    public static synchronized void shutdown() {
+        stopped = true;
+        stopPools();
+    }
+
+    private static void stopPools() {
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+            FairScheduler.dropAll();
+        }
+        if (forkJoinPool != null) {
+            forkJoinPool.shutdown();
+            forkJoinPool = null;
+        }
+        if (virtualExecutor != null) {
+            virtualExecutor.shutdown();
+            virtualExecutor = null;
+        }
+        if (fileExecutor != null) {
+            fileExecutor.shutdown();
+            fileExecutor = null;
+        }
+        if (watchdog != null) {
+            watchdog.shutdownNow();
+            watchdog = null;
+        }
+    }
+
+    /**
+     * Runs the action once after the given delay, on a single shared timer thread. Actions must be short, as they all share that thread.
+     */
+    public static synchronized ScheduledFuture<?> schedule(Runnable action, long delayMillis) {
+        if (watchdog == null) {
+            watchdog = new ScheduledThreadPoolExecutor(1, runnable -> {
+                Thread thread = new Thread(runnable, "DenizenAdditions-Watchdog");
+                thread.setDaemon(true);
+                return thread;
+            });
+            watchdog.setRemoveOnCancelPolicy(true);
+        }
+        return watchdog.schedule(action, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private static synchronized ExecutorService getVirtualExecutor() {
+        if (virtualExecutor == null && !stopped) {
+            virtualExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("DenizenAdditions-Virtual-", 1).factory());
+        }
+        return virtualExecutor;
+    }
+
+    /**
+     * Pool used to split a single large job across all cores. Work submitted here should already be running on an async worker.
+     * Once shut down, stragglers get the common pool rather than a new pool that would never be stopped.
+     */
+    public static synchronized ForkJoinPool getForkJoinPool() {
+        if (stopped) {
+            return ForkJoinPool.commonPool();
+        }
+        if (forkJoinPool == null) {
+            forkJoinPool = new ForkJoinPool(Math.max(1, parallelism), pool -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName("DenizenAdditions-Parallel-" + thread.getPoolIndex());
+                thread.setDaemon(true);
+                return thread;
+            }, null, false);
+        }
+        return forkJoinPool;
+    }
+
+    /**
+     * Threads for file I/O (opening files, and the reads and writes of AsynchronousFileChannel), so neither the main thread nor an async worker waits on the disk.
+     * Once shut down, stragglers get the common pool rather than a new pool that would never be stopped.
+     */
+    public static synchronized ExecutorService getFileExecutor() {
+        if (stopped) {
+            return ForkJoinPool.commonPool();
+        }
+        if (fileExecutor == null) {
+            AtomicInteger threadId = new AtomicInteger();
+            fileExecutor = new ThreadPoolExecutor(Math.max(1, fileThreads), Math.max(1, fileThreads), 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "DenizenAdditions-File-" + threadId.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            fileExecutor.allowCoreThreadTimeOut(true);
+        }
+        return fileExecutor;
+    }
+
+    private static AtomicInteger counterFor(String command) {
+        return inFlight.computeIfAbsent(command, k -> new AtomicInteger());
+    }
+
+    static ThreadPoolExecutor currentExecutor() {
+        return executor;
+    }
+
+    /**
+     * Returns the workers, setting them up with the defaults if they were never configured, or null once shut down.
+     */
+    private static ThreadPoolExecutor workers() {
+        ThreadPoolExecutor current = executor;
+        if (current != null) {
+            return current;
+        }
+        synchronized (AsyncExecutor.class) {
+            if (executor == null && !stopped) {
+                configure(null);
+            }
+            return executor;
+        }
+    }
+
+    /**
+     * Number of pooled async workers, which is how many tasks can actually run at once.
+     */
+    public static int getPoolSize() {
+        ThreadPoolExecutor current = workers();
+        return current == null ? 1 : current.getMaximumPoolSize();
+    }
+
+    /**
+     * Whether the current thread may block waiting on another async task.
+     * Virtual threads always may, and a pooled worker only if another worker is free to run whatever it's waiting on,
+     * so every worker can never end up waiting on a task that has no thread left to run it.
+     */
+    public static boolean canBlock() {
+        if (Thread.currentThread().isVirtual()) {
+            return true;
+        }
+        ThreadPoolExecutor current = executor;
+        return current == null || current.getActiveCount() < current.getMaximumPoolSize();
+    }
+
+    public static int getInFlight(String command) {
+        AtomicInteger counter = inFlight.get(command);
+        return counter == null ? 0 : counter.get();
+    }
+
+    private static boolean tryAcquire(String command) {
+        int limit = commandLimits.getOrDefault(command, -1);
+        AtomicInteger counter = counterFor(command);
+        while (true) {
+            int current = counter.get();
+            if (limit >= 0 && current >= limit) {
+                return false;
+            }
+            if (counter.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Runs the task on the plugin's async workers, applying the configured limits.
+     * If the task is rejected or dropped, 'onDropped' is ran instead (possibly on another thread) so the caller can finish its entry.
+     */
+    public static void submit(ScriptEntry entry, String command, Runnable task, Runnable onDropped) {
+        submit(entry, command, task, onDropped, false);
+    }
+
+    /**
+     * As above, but if 'virtual' is true the task gets its own virtual thread instead of a pooled worker.
+     * Virtual tasks are only limited by the per-command limit, since blocking inside them doesn't hold a worker.
+     */
+    public static void submit(ScriptEntry entry, String command, Runnable task, Runnable onDropped, boolean virtual) {
+        if (workers() == null) {
+            Debug.echoError(entry, "Async workers are shut down, rejected '" + command + "' task.");
+            if (onDropped != null) {
+                onDropped.run();
+            }
+            return;
+        }
+        AsyncTask asyncTask = new AsyncTask(command, task, onDropped);
+        boolean commandFull = !tryAcquire(command);
+        if (virtual) {
+            if (!commandFull) {
+                try {
+                    ExecutorService virtualWorkers = getVirtualExecutor();
+                    if (virtualWorkers == null) {
+                        throw new RejectedExecutionException();
+                    }
+                    virtualWorkers.execute(asyncTask);
+                }
+                catch (RejectedExecutionException ex) {
+                    asyncTask.drop();
+                }
+            }
+            else if (overflowPolicy == OverflowPolicy.CALLER_RUNS) {
+                counterFor(command).incrementAndGet();
+                asyncTask.run();
+            }
+            else {
+                reject(entry, asyncTask, true);
+            }
+            return;
+        }
+        String flowKey = FairScheduler.flowKey(entry);
+        if (!commandFull) {
+            if (FairScheduler.offer(flowKey, asyncTask)) {
+                dropIfStopped();
+                return;
+            }
+            counterFor(command).decrementAndGet();
+        }
+        switch (overflowPolicy) {
+            case CALLER_RUNS -> {
+                counterFor(command).incrementAndGet();
+                asyncTask.run();
+            }
+            case DROP_OLDEST -> {
+                if (FairScheduler.dropOldest(commandFull ? command : null)) {
+                    Debug.echoError(entry, "Async task queue is full, dropped the oldest waiting " + (commandFull ? "'" + command + "' " : "") + "task.");
+                    if (tryAcquire(command)) {
+                        if (FairScheduler.offer(flowKey, asyncTask)) {
+                            dropIfStopped();
+                            return;
+                        }
+                        counterFor(command).decrementAndGet();
+                    }
+                }
+                reject(entry, asyncTask, commandFull);
+            }
+            default -> reject(entry, asyncTask, commandFull);
+        }
+    }
+
+    // A task queued while shutdown was dropping the waiting ones could otherwise wait forever.
+    private static void dropIfStopped() {
+        if (stopped) {
+            FairScheduler.dropAll();
+        }
+    }
+
+    private static void reject(ScriptEntry entry, AsyncTask task, boolean commandFull) {
+        Debug.echoError(entry, commandFull
+                ? "Too many '" + task.command + "' tasks are already running, rejected."
+                : "Async task queue is full, rejected '" + task.command + "' task.");
+        if (task.onDropped != null) {
+            task.onDropped.run();
+        }
+    }
+}
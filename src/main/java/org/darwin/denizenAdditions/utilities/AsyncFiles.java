@@ -0,0 +1,162 @@
+package org.darwin.denizenAdditions.utilities;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * File reads and writes on AsynchronousFileChannel, run on AsyncExecutor's file threads.
+ * Opening the file and every read or write happen there (each continuing from the completion handler of the previous one),
+ * so no Denizen async worker, nor the main thread, waits on the disk. On platforms without native async file I/O (like Linux),
+ * the file threads themselves block on each read or write.
+ * Reads fill the array that's returned, so the data is never copied.
+ */
+public class AsyncFiles {
+
+    public enum WriteMode {OVERWRITE, APPEND, OFFSET}
+
+    public static final int MAX_READ = Integer.MAX_VALUE - 8;
+
+    /**
+     * Reads 'length' bytes from 'offset' (or up to the end of the file if length is negative), completing with fewer bytes if the file ends first.
+     */
+    public static CompletableFuture<byte[]> read(Path path, long offset, long length) {
+        CompletableFuture<byte[]> result = new CompletableFuture<>();
+        ExecutorService files = AsyncExecutor.getFileExecutor();
+        try {
+            files.execute(() -> startRead(path, offset, length, files, result));
+        }
+        catch (RejectedExecutionException ex) {
+            result.completeExceptionally(ex);
+        }
+        return result;
+    }
+
+    private static void startRead(Path path, long offset, long length, ExecutorService files, CompletableFuture<byte[]> result) {
+        AsynchronousFileChannel channel = null;
+        byte[] data;
+        try {
+            channel = AsynchronousFileChannel.open(path, Set.of(StandardOpenOption.READ), files);
+            long available = Math.max(0, channel.size() - offset);
+            long size = length < 0 ? available : Math.min(length, available);
+            if (size > MAX_READ) {
+                throw new IOException("Cannot read more than " + MAX_READ + " bytes at once");
+            }
+            data = new byte[(int) size];
+        }
+        catch (Throwable ex) {
+            if (channel != null) {
+                close(channel);
+            }
+            result.completeExceptionally(ex);
+            return;
+        }
+        AsynchronousFileChannel opened = channel;
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        opened.read(buffer, offset, null, new CompletionHandler<Integer, Void>() {
+            @Override
+            public void completed(Integer read, Void attachment) {
+                if (read >= 0 && buffer.hasRemaining()) {
+                    opened.read(buffer, offset + buffer.position(), null, this);
+                    return;
+                }
+                close(opened);
+                // The file shrank since its size was checked: only return what was there.
+                result.complete(buffer.hasRemaining() ? Arrays.copyOf(data, buffer.position()) : data);
+            }
+
+            @Override
+            public void failed(Throwable ex, Void attachment) {
+                close(opened);
+                result.completeExceptionally(ex);
+            }
+        });
+    }
+
+    /**
+     * Writes all of 'data' to the file (created if needed), completing with the file's new size.
+     * OVERWRITE replaces the file's contents, APPEND writes after its current end, and OFFSET writes at 'offset' and keeps the rest of the file.
+     */
+    public static CompletableFuture<Long> write(Path path, byte[] data, WriteMode mode, long offset) {
+        CompletableFuture<Long> result = new CompletableFuture<>();
+        ExecutorService files = AsyncExecutor.getFileExecutor();
+        try {
+            files.execute(() -> startWrite(path, data, mode, offset, files, result));
+        }
+        catch (RejectedExecutionException ex) {
+            result.completeExceptionally(ex);
+        }
+        return result;
+    }
+
+    private static void startWrite(Path path, byte[] data, WriteMode mode, long offset, ExecutorService files, CompletableFuture<Long> result) {
+        AsynchronousFileChannel channel = null;
+        long start;
+        try {
+            Path parent = path.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            // AsynchronousFileChannel doesn't support APPEND, so appends start at the size when opened.
+            Set<OpenOption> options = mode == WriteMode.OVERWRITE
+                    ? Set.of(StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)
+                    : Set.of(StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+            channel = AsynchronousFileChannel.open(path, options, files);
+            start = switch (mode) {
+                case OVERWRITE -> 0;
+                case APPEND -> channel.size();
+                case OFFSET -> offset;
+            };
+        }
+        catch (Throwable ex) {
+            if (channel != null) {
+                close(channel);
+            }
+            result.completeExceptionally(ex);
+            return;
+        }
+        AsynchronousFileChannel opened = channel;
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        opened.write(buffer, start, null, new CompletionHandler<Integer, Void>() {
+            @Override
+            public void completed(Integer written, Void attachment) {
+                if (buffer.hasRemaining()) {
+                    opened.write(buffer, start + buffer.position(), null, this);
+                    return;
+                }
+                try {
+                    long size = opened.size();
+                    close(opened);
+                    result.complete(size);
+                }
+                catch (IOException ex) {
+                    failed(ex, attachment);
+                }
+            }
+
+            @Override
+            public void failed(Throwable ex, Void attachment) {
+                close(opened);
+                result.completeExceptionally(ex);
+            }
+        });
+    }
+
+    private static void close(AsynchronousFileChannel channel) {
+        try {
+            channel.close();
+        }
+        catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package org.darwin.denizenAdditions.utilities;
+
+import com.denizenscript.denizencore.objects.ObjectTag;
+import com.denizenscript.denizencore.objects.core.ListTag;
+import com.denizenscript.denizencore.objects.core.ScriptTag;
+import com.denizenscript.denizencore.scripts.ScriptEntry;
+import com.denizenscript.denizencore.scripts.ScriptEntryData;
+import com.denizenscript.denizencore.scripts.containers.ScriptContainer;
+import com.denizenscript.denizencore.scripts.queues.core.InstantQueue;
+import com.denizenscript.denizencore.utilities.debugging.Debug;
+import org.bukkit.Bukkit;
+
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Instant queue used by the async commands, that can be cancelled from any thread.
+ * Cancellation is cooperative: it's checked before each entry runs, so the entry currently running is never stopped midway.
+ * With a timeout, the queue is cancelled once it has run for that long, and its worker thread is interrupted so blocking calls give up.
+ */
+public class AsyncQueue extends InstantQueue {
+
+    private static final AtomicLong ID_COUNTER = new AtomicLong(System.nanoTime());
+
+    public static String nextId(String prefix) {
+        return prefix + "_" + Long.toHexString(ID_COUNTER.getAndIncrement());
+    }
+
+    private volatile boolean cancelled = false;
+
+    private volatile boolean timedOut = false;
+
+    private long timeoutMillis = 0;
+
+    private volatile long deadline = 0;
+
+    private final Object runnerLock = new Object();
+
+    // Guarded by runnerLock, so the watchdog can't interrupt the thread after it has moved on to another task.
+    private Thread runner;
+
+    public AsyncQueue(String id) {
+        super(id);
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    /**
+     * Sets how long the queue may run once started. Must be called before the queue starts.
+     */
+    public void setTimeout(long millis) {
+        timeoutMillis = millis;
+    }
+
+    @Override
+    protected void onStart() {
+        ScheduledFuture<?> watchdog = null;
+        if (timeoutMillis > 0) {
+            deadline = System.nanoTime() + timeoutMillis * 1_000_000L;
+            // Never interrupt the main thread, in case the overflow policy made it run this queue.
+            synchronized (runnerLock) {
+                runner = Bukkit.isPrimaryThread() ? null : Thread.currentThread();
+            }
+            watchdog = AsyncExecutor.schedule(this::timeOut, timeoutMillis);
+        }
+        try {
+            super.onStart();
+        }
+        finally {
+            if (watchdog != null) {
+                watchdog.cancel(false);
+                synchronized (runnerLock) {
+                    runner = null;
+                    Thread.interrupted();
+                }
+            }
+        }
+    }
+
+    private void timeOut() {
+        if (cancelled) {
+            return;
+        }
+        timedOut = true;
+        cancelled = true;
+        Debug.echoError("Queue '" + id + "' timed out after " + timeoutMillis + "ms.");
+        synchronized (runnerLock) {
+            if (runner != null) {
+                runner.interrupt();
+            }
+        }
+    }
+
+    @Override
+    protected void revolve() {
+        if (!cancelled && deadline != 0 && System.nanoTime() - deadline >= 0) {
+            timeOut();
+        }
+        if (cancelled) {
+            stop();
+            return;
+        }
+        super.revolve();
+    }
+
+    /**
+     * Builds (but doesn't start) a queue that runs the given script, or a path within it.
+     * The queue gets exactly the given ID, see nextId for a generated one.
+     * Definitions are named by the script's "definitions:" key, or numbered from 1 if it doesn't have one.
+     */
+    public static AsyncQueue forScript(ScriptTag script, String path, ScriptEntryData entryData, ListTag definitions, String id) {
+        ScriptContainer container = script.getContainer();
+        List<ScriptEntry> entries = path == null
+                ? container.getBaseEntries(entryData.clone())
+                : container.getEntries(entryData.clone(), path);
+        AsyncQueue queue = new AsyncQueue(id);
+        for (ScriptEntry entry : entries) {
+            entry.queue = queue;
+        }
+        queue.addEntries(entries);
+        if (definitions != null) {
+            String definitionNames = container.getString("definitions");
+            String[] names = definitionNames == null ? new String[0] : definitionNames.split("\\|");
+            int index = 0;
+            for (ObjectTag definition : definitions.objectForms) {
+                String name = index < names.length ? names[index] : String.valueOf(index + 1);
+                int bracket = name.indexOf('[');
+                if (bracket != -1) {
+                    name = name.substring(0, bracket);
+                }
+                queue.addDefinition(name.trim(), definition);
+                index++;
+            }
+            queue.addDefinition("raw_context", definitions);
+        }
+        return queue;
+    }
+}
@@ -0,0 +1,254 @@
+package org.darwin.denizenAdditions.utilities;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Versioned chunked AES-GCM format, so large data can be encrypted and decrypted on several cores, or streamed.
+ * Layout: header [4 bytes "DAEC"][byte version][int chunk size][8 bytes random nonce prefix], then the chunks.
+ * Every chunk is 'chunk size' plaintext bytes plus a 16 byte tag, except the last one, which may be shorter (and is present even for empty data).
+ * A chunk's nonce is the nonce prefix followed by its index, and its associated data is the header plus a "last chunk" flag,
+ * so chunks can't be reordered, dropped from the end, or moved between messages without failing authentication.
+ */
+public class ChunkedCipher {
+
+    public static final byte[] MAGIC = {'D', 'A', 'E', 'C'};
+
+    public static final byte VERSION = 1;
+
+    public static final int HEADER_SIZE = 4 + 1 + 4 + 8;
+
+    public static final int TAG_SIZE = 16;
+
+    public static final int MIN_CHUNK_SIZE = 1024, MAX_CHUNK_SIZE = 16 * 1024 * 1024;
+
+    public static int defaultChunkSize = 64 * 1024;
+
+    // Chunks handled by one fork/join task, about a megabyte of work with the default chunk size.
+    private static final int MIN_TASK_BYTES = 1024 * 1024;
+
+    private static final SecureRandom random = new SecureRandom();
+
+    private static final ThreadLocal<Cipher> threadCipher = ThreadLocal.withInitial(() -> {
+        try {
+            return Cipher.getInstance("AES/GCM/NoPadding");
+        }
+        catch (GeneralSecurityException ex) {
+            throw new IllegalStateException(ex);
+        }
+    });
+
+    public static class Header {
+
+        public final byte[] bytes;
+
+        public final int chunkSize;
+
+        private Header(byte[] bytes, int chunkSize) {
+            this.bytes = bytes;
+            this.chunkSize = chunkSize;
+        }
+
+        public static Header create(int chunkSize) {
+            chunkSize = Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE, chunkSize));
+            byte[] prefix = new byte[8];
+            random.nextBytes(prefix);
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE);
+            buffer.put(MAGIC).put(VERSION).putInt(chunkSize).put(prefix);
+            return new Header(buffer.array(), chunkSize);
+        }
+
+        /**
+         * Reads a header from the start of the buffer (without moving it), or returns null if it isn't this format.
+         */
+        public static Header read(ByteBuffer buffer) throws GeneralSecurityException {
+            if (!hasMagic(buffer)) {
+                return null;
+            }
+            byte[] bytes = new byte[HEADER_SIZE];
+            buffer.get(buffer.position(), bytes);
+            if (bytes[4] != VERSION) {
+                throw new GeneralSecurityException("Unsupported encryption format version " + bytes[4]);
+            }
+            int chunkSize = ByteBuffer.wrap(bytes, 5, 4).getInt();
+            if (chunkSize < MIN_CHUNK_SIZE || chunkSize > MAX_CHUNK_SIZE) {
+                throw new GeneralSecurityException("Invalid chunk size " + chunkSize);
+            }
+            return new Header(bytes, chunkSize);
+        }
+
+        public int encryptedChunkSize() {
+            return chunkSize + TAG_SIZE;
+        }
+
+        private GCMParameterSpec nonce(long index) {
+            byte[] nonce = new byte[12];
+            System.arraycopy(bytes, 9, nonce, 0, 8);
+            nonce[8] = (byte) (index >>> 24);
+            nonce[9] = (byte) (index >>> 16);
+            nonce[10] = (byte) (index >>> 8);
+            nonce[11] = (byte) index;
+            return new GCMParameterSpec(TAG_SIZE * 8, nonce);
+        }
+
+        private Cipher init(int mode, SecretKeySpec key, long index, boolean last) throws GeneralSecurityException {
+            if (index > 0xFFFFFFFFL) {
+                throw new GeneralSecurityException("Too many chunks");
+            }
+            Cipher cipher = threadCipher.get();
+            cipher.init(mode, key, nonce(index));
+            cipher.updateAAD(bytes);
+            cipher.updateAAD(new byte[] {(byte) (last ? 1 : 0)});
+            return cipher;
+        }
+
+        /**
+         * Encrypts all remaining bytes of 'input' (at most one chunk) as chunk 'index' into 'output'.
+         */
+        public int encryptChunk(SecretKeySpec key, long index, boolean last, ByteBuffer input, ByteBuffer output) throws GeneralSecurityException {
+            return init(Cipher.ENCRYPT_MODE, key, index, last).doFinal(input, output);
+        }
+
+        /**
+         * Decrypts all remaining bytes of 'input' (one encrypted chunk) as chunk 'index' into 'output'.
+         */
+        public int decryptChunk(SecretKeySpec key, long index, boolean last, ByteBuffer input, ByteBuffer output) throws GeneralSecurityException {
+            return init(Cipher.DECRYPT_MODE, key, index, last).doFinal(input, output);
+        }
+    }
+
+    public static boolean hasMagic(ByteBuffer buffer) {
+        if (buffer.remaining() < HEADER_SIZE) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (buffer.get(buffer.position() + i) != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static boolean isChunked(byte[] data) {
+        return hasMagic(ByteBuffer.wrap(data));
+    }
+
+    public static byte[] encrypt(byte[] data, SecretKeySpec key, int chunkSize) throws GeneralSecurityException {
+        Header header = Header.create(chunkSize);
+        long chunks = Math.max(1, ((long) data.length + header.chunkSize - 1) / header.chunkSize);
+        long size = HEADER_SIZE + (long) data.length + chunks * TAG_SIZE;
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new GeneralSecurityException("Data too large to encrypt in memory");
+        }
+        byte[] output = new byte[(int) size];
+        System.arraycopy(header.bytes, 0, output, 0, HEADER_SIZE);
+        run(new ChunkRange(Cipher.ENCRYPT_MODE, header, key, data, output, 0, (int) chunks, (int) chunks, data.length));
+        return output;
+    }
+
+    public static byte[] decrypt(byte[] data, SecretKeySpec key) throws GeneralSecurityException {
+        Header header = Header.read(ByteBuffer.wrap(data));
+        if (header == null) {
+            throw new GeneralSecurityException("Not chunked encrypted data");
+        }
+        int body = data.length - HEADER_SIZE;
+        int chunks = Math.max(1, (int) (((long) body + header.encryptedChunkSize() - 1) / header.encryptedChunkSize()));
+        long lastChunk = (long) body - (long) (chunks - 1) * header.encryptedChunkSize();
+        if (lastChunk < TAG_SIZE) {
+            throw new AEADBadTagException("Truncated encrypted data");
+        }
+        long plainSize = (long) body - (long) chunks * TAG_SIZE;
+        byte[] output = new byte[(int) plainSize];
+        run(new ChunkRange(Cipher.DECRYPT_MODE, header, key, data, output, 0, chunks, chunks, (int) plainSize));
+        return output;
+    }
+
+    private static void run(ChunkRange range) throws GeneralSecurityException {
+        try {
+            if ((long) range.to * range.header.chunkSize <= MIN_TASK_BYTES) {
+                range.compute();
+            }
+            else {
+                AsyncExecutor.getForkJoinPool().invoke(range);
+            }
+        }
+        catch (RuntimeException ex) {
+            // The fork/join pool may rethrow a wrapped copy of the worker's exception.
+            for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+                if (cause instanceof ChunkFailure failure) {
+                    throw failure.cause;
+                }
+            }
+            throw ex;
+        }
+    }
+
+    private static class ChunkFailure extends RuntimeException {
+
+        final GeneralSecurityException cause;
+
+        ChunkFailure(GeneralSecurityException cause) {
+            super(cause.getMessage(), cause, false, false);
+            this.cause = cause;
+        }
+    }
+
+    /**
+     * Encrypts or decrypts chunks [from, to) between two arrays, splitting the range across the fork/join pool.
+     */
+    private static class ChunkRange extends RecursiveAction {
+
+        private final int mode;
+        private final Header header;
+        private final SecretKeySpec key;
+        private final byte[] input, output;
+        private final int from, to, chunks, plainSize;
+
+        ChunkRange(int mode, Header header, SecretKeySpec key, byte[] input, byte[] output, int from, int to, int chunks, int plainSize) {
+            this.mode = mode;
+            this.header = header;
+            this.key = key;
+            this.input = input;
+            this.output = output;
+            this.from = from;
+            this.to = to;
+            this.chunks = chunks;
+            this.plainSize = plainSize;
+        }
+
+        @Override
+        protected void compute() {
+            int taskChunks = Math.max(1, MIN_TASK_BYTES / header.chunkSize);
+            if (to - from > taskChunks) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ChunkRange(mode, header, key, input, output, from, middle, chunks, plainSize),
+                        new ChunkRange(mode, header, key, input, output, middle, to, chunks, plainSize));
+                return;
+            }
+            int chunkSize = header.chunkSize;
+            for (int i = from; i < to; i++) {
+                int plainOffset = i * chunkSize;
+                int plainLength = Math.min(chunkSize, plainSize - plainOffset);
+                int encryptedOffset = HEADER_SIZE + i * header.encryptedChunkSize();
+                try {
+                    Cipher cipher = header.init(mode, key, i, i == chunks - 1);
+                    if (mode == Cipher.ENCRYPT_MODE) {
+                        cipher.doFinal(input, plainOffset, plainLength, output, encryptedOffset);
+                    }
+                    else {
+                        cipher.doFinal(input, encryptedOffset, plainLength + TAG_SIZE, output, plainOffset);
+                    }
+                }
+                catch (GeneralSecurityException ex) {
+                    throw new ChunkFailure(ex);
+                }
+            }
+        }
+    }
+}
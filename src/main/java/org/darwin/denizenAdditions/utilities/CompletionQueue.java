@@ -0,0 +1,92 @@
+package org.darwin.denizenAdditions.utilities;
+
+import com.denizenscript.denizencore.objects.ObjectTag;
+import com.denizenscript.denizencore.scripts.ScriptEntry;
+import com.denizenscript.denizencore.utilities.debugging.Debug;
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Single hand-off point from async threads back to the main thread.
+ * Everything submitted here is ran in order by one task that drains the queue once per tick.
+ */
+public class CompletionQueue {
+
+    private static final ConcurrentLinkedQueue<Runnable> pending = new ConcurrentLinkedQueue<>();
+
+    private static BukkitTask drainTask;
+
+    private static long tickBudgetNanos;
+
+    public static void start(Plugin plugin, ConfigurationSection config) {
+        stop();
+        long budgetMillis = config == null ? 0 : config.getLong("tick_budget_ms", 0);
+        tickBudgetNanos = Math.max(0, budgetMillis) * 1_000_000L;
+        drainTask = Bukkit.getScheduler().runTaskTimer(plugin, CompletionQueue::drain, 1, 1);
+    }
+
+    public static void stop() {
+        if (drainTask != null) {
+            drainTask.cancel();
+            drainTask = null;
+            tickBudgetNanos = 0;
+            drain();
+        }
+    }
+
+    public static void drain() {
+        long start = tickBudgetNanos > 0 ? System.nanoTime() : 0;
+        Runnable action;
+        while ((action = pending.poll()) != null) {
+            try {
+                action.run();
+            }
+            catch (Throwable ex) {
+                Debug.echoError(ex);
+            }
+            if (tickBudgetNanos > 0 && System.nanoTime() - start >= tickBudgetNanos) {
+                return;
+            }
+        }
+    }
+
+    public static int size() {
+        return pending.size();
+    }
+
+    public static void submit(Runnable action) {
+        pending.add(action);
+    }
+
+    public static void save(ScriptEntry entry, String key, ObjectTag value) {
+        pending.add(() -> entry.saveObject(key, value));
+    }
+
+    public static void complete(ScriptEntry entry) {
+        pending.add(() -> entry.setFinished(true));
+    }
+
+    /**
+     * Saves the given objects onto the entry and marks it finished, on the main thread.
+     */
+    public static void complete(ScriptEntry entry, Map<String, ObjectTag> saved) {
+        pending.add(completion(entry, saved));
+    }
+
+    /**
+     * Returns the action 'complete' would run, for callers that hand it to the main thread some other way.
+     */
+    public static Runnable completion(ScriptEntry entry, Map<String, ObjectTag> saved) {
+        return () -> {
+            for (Map.Entry<String, ObjectTag> save : saved.entrySet()) {
+                entry.saveObject(save.getKey(), save.getValue());
+            }
+            entry.setFinished(true);
+        };
+    }
+}
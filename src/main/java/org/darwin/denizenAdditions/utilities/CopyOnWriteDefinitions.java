@@ -0,0 +1,119 @@
+package org.darwin.denizenAdditions.utilities;
+
+import com.denizenscript.denizencore.objects.ObjectTag;
+import com.denizenscript.denizencore.objects.core.MapTag;
+import com.denizenscript.denizencore.utilities.text.StringHolder;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Backing map for queue definitions that shares a frozen snapshot until its first write.
+ * The snapshot map is never modified once frozen, so any number of queues on any thread can read it.
+ */
+public class CopyOnWriteDefinitions extends AbstractMap<StringHolder, ObjectTag> {
+
+    /**
+     * Makes 'target' see the current contents of 'source' without copying them.
+     * Both maps keep sharing the same snapshot until one of them is written to.
+     * Returns that snapshot, which is never modified, so callers can later compare against what 'target' started with.
+     */
+    public static Map<StringHolder, ObjectTag> shareInto(MapTag source, MapTag target) {
+        Map<StringHolder, ObjectTag> frozen;
+        if (source.map instanceof CopyOnWriteDefinitions sourceDefinitions) {
+            frozen = sourceDefinitions.freeze();
+        }
+        else {
+            frozen = source.map;
+            source.map = new CopyOnWriteDefinitions(frozen);
+        }
+        if (target.map.isEmpty()) {
+            target.map = new CopyOnWriteDefinitions(frozen);
+        }
+        else {
+            target.map.putAll(frozen);
+        }
+        return frozen;
+    }
+
+    private Map<StringHolder, ObjectTag> shared;
+
+    private Map<StringHolder, ObjectTag> own;
+
+    private CopyOnWriteDefinitions(Map<StringHolder, ObjectTag> shared) {
+        this.shared = shared;
+    }
+
+    private Map<StringHolder, ObjectTag> current() {
+        return own != null ? own : shared;
+    }
+
+    private Map<StringHolder, ObjectTag> writable() {
+        if (own == null) {
+            own = new LinkedHashMap<>(shared);
+        }
+        return own;
+    }
+
+    private Map<StringHolder, ObjectTag> freeze() {
+        if (own != null) {
+            shared = own;
+            own = null;
+        }
+        return shared;
+    }
+
+    @Override
+    public int size() {
+        return current().size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return current().isEmpty();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return current().containsKey(key);
+    }
+
+    @Override
+    public ObjectTag get(Object key) {
+        return current().get(key);
+    }
+
+    @Override
+    public ObjectTag put(StringHolder key, ObjectTag value) {
+        return writable().put(key, value);
+    }
+
+    @Override
+    public ObjectTag remove(Object key) {
+        if (own == null && !shared.containsKey(key)) {
+            return null;
+        }
+        return writable().remove(key);
+    }
+
+    @Override
+    public void putAll(Map<? extends StringHolder, ? extends ObjectTag> map) {
+        if (!map.isEmpty()) {
+            writable().putAll(map);
+        }
+    }
+
+    @Override
+    public void clear() {
+        shared = Collections.emptyMap();
+        own = null;
+    }
+
+    @Override
+    public Set<Entry<StringHolder, ObjectTag>> entrySet() {
+        return own != null ? own.entrySet() : Collections.unmodifiableMap(shared).entrySet();
+    }
+}
@@ -0,0 +1,105 @@
+package org.darwin.denizenAdditions.utilities;
+
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Item;
+import org.bukkit.entity.LivingEntity;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.potion.PotionEffect;
+import org.bukkit.potion.PotionEffectType;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Captures an immutable view of the tracked entities once per tick, on the main thread.
+ * Every tick builds a fresh map and publishes it with one volatile write, so readers on any thread see a consistent tick without locking.
+ */
+public class EntitySnapshots {
+
+    public record Snapshot(Map<PotionEffectType, PotionEffect> effects, UUID thrower, UUID owner, boolean freezeLocked) {
+    }
+
+    private static final Set<UUID> tracked = ConcurrentHashMap.newKeySet();
+
+    private static volatile Map<UUID, Snapshot> snapshots = Collections.emptyMap();
+
+    private static boolean allPlayers = false;
+
+    private static BukkitTask captureTask;
+
+    public static void start(Plugin plugin, ConfigurationSection config) {
+        stop();
+        allPlayers = config != null && config.getBoolean("all_players", false);
+        captureTask = Bukkit.getScheduler().runTaskTimer(plugin, EntitySnapshots::capture, 1, 1);
+    }
+
+    public static void stop() {
+        if (captureTask != null) {
+            captureTask.cancel();
+            captureTask = null;
+        }
+        snapshots = Collections.emptyMap();
+    }
+
+    public static void track(UUID uuid) {
+        tracked.add(uuid);
+    }
+
+    public static void untrack(UUID uuid) {
+        tracked.remove(uuid);
+    }
+
+    public static void clear() {
+        tracked.clear();
+    }
+
+    public static int trackedCount() {
+        return tracked.size();
+    }
+
+    public static Snapshot get(UUID uuid) {
+        return snapshots.get(uuid);
+    }
+
+    public static void capture() {
+        Map<UUID, Snapshot> captured = new HashMap<>(tracked.size() * 2);
+        for (UUID uuid : tracked) {
+            Entity entity = Bukkit.getEntity(uuid);
+            if (entity != null && entity.isValid()) {
+                captured.put(uuid, snapshot(entity));
+            }
+        }
+        if (allPlayers) {
+            for (Player player : Bukkit.getOnlinePlayers()) {
+                captured.computeIfAbsent(player.getUniqueId(), uuid -> snapshot(player));
+            }
+        }
+        snapshots = Collections.unmodifiableMap(captured);
+    }
+
+    private static Snapshot snapshot(Entity entity) {
+        Map<PotionEffectType, PotionEffect> effects = Collections.emptyMap();
+        if (entity instanceof LivingEntity living) {
+            Map<PotionEffectType, PotionEffect> activeEffects = new HashMap<>();
+            for (PotionEffect effect : living.getActivePotionEffects()) {
+                activeEffects.put(effect.getType(), effect);
+            }
+            effects = Collections.unmodifiableMap(activeEffects);
+        }
+        UUID thrower = null;
+        UUID owner = null;
+        if (entity instanceof Item item) {
+            thrower = item.getThrower();
+            owner = item.getOwner();
+        }
+        return new Snapshot(effects, thrower, owner, entity.isFreezeTickingLocked());
+    }
+}
@@ -0,0 +1,272 @@
+package org.darwin.denizenAdditions.utilities;
+
+import com.denizenscript.denizencore.objects.core.ScriptTag;
+import com.denizenscript.denizencore.scripts.ScriptEntry;
+import com.denizenscript.denizencore.scripts.queues.ScriptQueue;
+import com.denizenscript.denizencore.utilities.CoreUtilities;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Decides which waiting async task gets the next free worker.
+ * Tasks wait in one FIFO queue per flow (the script that started them, or the queue id for scriptless queues),
+ * and flows take turns in proportion to their weight (stride scheduling), skipping flows that reached their concurrency limit.
+ * Tasks are only handed to the executor when a worker is free, so the executor's own queue stays empty and can't undo the ordering.
+ */
+public class FairScheduler {
+
+    private static final double STRIDE = 1_000_000.0;
+
+    private static class Flow {
+
+        final String key;
+        final ArrayDeque<AsyncExecutor.AsyncTask> waiting = new ArrayDeque<>();
+        double weight = 1;
+        int limit = -1;
+        int running = 0;
+        double pass = 0;
+
+        Flow(String key) {
+            this.key = key;
+        }
+    }
+
+    private static final Map<String, Flow> flows = new HashMap<>();
+
+    private static Map<String, Double> weights = new HashMap<>();
+
+    private static Map<String, Integer> limits = new HashMap<>();
+
+    private static double defaultWeight = 1;
+
+    private static int defaultLimit = -1;
+
+    private static int maxWaiting = 1024;
+
+    private static int totalWaiting = 0;
+
+    private static int totalRunning = 0;
+
+    private static double virtualTime = 0;
+
+    public static synchronized void configure(ConfigurationSection config, int queueSize) {
+        maxWaiting = queueSize;
+        defaultWeight = 1;
+        defaultLimit = -1;
+        weights = new HashMap<>();
+        limits = new HashMap<>();
+        if (config != null) {
+            defaultWeight = Math.max(0.01, config.getDouble("default_weight", defaultWeight));
+            defaultLimit = config.getInt("default_limit", defaultLimit);
+            ConfigurationSection scripts = config.getConfigurationSection("scripts");
+            if (scripts != null) {
+                for (String script : scripts.getKeys(false)) {
+                    ConfigurationSection section = scripts.getConfigurationSection(script);
+                    if (section == null) {
+                        continue;
+                    }
+                    String key = CoreUtilities.toLowerCase(script);
+                    if (section.contains("weight")) {
+                        weights.put(key, Math.max(0.01, section.getDouble("weight")));
+                    }
+                    if (section.contains("limit")) {
+                        limits.put(key, section.getInt("limit"));
+                    }
+                }
+            }
+        }
+        for (Flow flow : flows.values()) {
+            applySettings(flow);
+        }
+    }
+
+    private static void applySettings(Flow flow) {
+        flow.weight = weights.getOrDefault(flow.key, defaultWeight);
+        flow.limit = limits.getOrDefault(flow.key, defaultLimit);
+    }
+
+    public static String flowKey(ScriptEntry entry) {
+        ScriptTag script = entry == null ? null : entry.getScript();
+        if (script != null) {
+            return CoreUtilities.toLowerCase(script.getName());
+        }
+        ScriptQueue queue = entry == null ? null : entry.getResidingQueue();
+        return queue != null ? "queue:" + CoreUtilities.toLowerCase(queue.id) : "unknown";
+    }
+
+    /**
+     * Queues the task in its flow and starts as many waiting tasks as there are free workers.
+     * Returns false if too many tasks are already waiting.
+     */
+    public static boolean offer(String flowKey, AsyncExecutor.AsyncTask task) {
+        synchronized (FairScheduler.class) {
+            if (totalWaiting >= maxWaiting) {
+                return false;
+            }
+            Flow flow = flows.get(flowKey);
+            if (flow == null) {
+                flow = new Flow(flowKey);
+                applySettings(flow);
+                flows.put(flowKey, flow);
+            }
+            if (flow.waiting.isEmpty() && flow.running == 0) {
+                // A flow that was idle doesn't get to spend the turns it skipped.
+                flow.pass = Math.max(flow.pass, virtualTime);
+            }
+            flow.waiting.add(task);
+            totalWaiting++;
+        }
+        dispatch();
+        return true;
+    }
+
+    private static void dispatch() {
+        while (true) {
+            ThreadPoolExecutor executor = AsyncExecutor.currentExecutor();
+            if (executor == null) {
+                return;
+            }
+            Flow flow;
+            AsyncExecutor.AsyncTask task;
+            synchronized (FairScheduler.class) {
+                if (totalRunning >= executor.getMaximumPoolSize()) {
+                    return;
+                }
+                flow = next();
+                if (flow == null) {
+                    return;
+                }
+                task = flow.waiting.poll();
+                totalWaiting--;
+                totalRunning++;
+                flow.running++;
+                virtualTime = flow.pass;
+                flow.pass += STRIDE / flow.weight;
+            }
+            Flow ranFlow = flow;
+            try {
+                executor.execute(() -> {
+                    try {
+                        task.run();
+                    }
+                    finally {
+                        finished(ranFlow);
+                        dispatch();
+                    }
+                });
+            }
+            catch (RejectedExecutionException ex) {
+                finished(ranFlow);
+                task.drop();
+            }
+        }
+    }
+
+    private static Flow next() {
+        Flow best = null;
+        for (Flow flow : flows.values()) {
+            if (flow.waiting.isEmpty() || (flow.limit >= 0 && flow.running >= flow.limit)) {
+                continue;
+            }
+            if (best == null || flow.pass < best.pass) {
+                best = flow;
+            }
+        }
+        return best;
+    }
+
+    private static synchronized void finished(Flow flow) {
+        totalRunning--;
+        flow.running--;
+        if (flow.running == 0 && flow.waiting.isEmpty()) {
+            flows.remove(flow.key, flow);
+        }
+    }
+
+    /**
+     * Drops the oldest waiting task of the given command (or of any command if null), taken from the flow with the most waiting tasks.
+     */
+    public static boolean dropOldest(String command) {
+        AsyncExecutor.AsyncTask dropped = null;
+        synchronized (FairScheduler.class) {
+            Flow largest = null;
+            for (Flow flow : flows.values()) {
+                if (!flow.waiting.isEmpty() && (largest == null || flow.waiting.size() > largest.waiting.size())
+                        && (command == null || hasCommand(flow, command))) {
+                    largest = flow;
+                }
+            }
+            if (largest != null) {
+                Iterator<AsyncExecutor.AsyncTask> iterator = largest.waiting.iterator();
+                while (iterator.hasNext()) {
+                    AsyncExecutor.AsyncTask task = iterator.next();
+                    if (command == null || task.command.equals(command)) {
+                        iterator.remove();
+                        totalWaiting--;
+                        dropped = task;
+                        break;
+                    }
+                }
+                if (largest.running == 0 && largest.waiting.isEmpty()) {
+                    flows.remove(largest.key, largest);
+                }
+            }
+        }
+        if (dropped == null) {
+            return false;
+        }
+        dropped.drop();
+        return true;
+    }
+
+    /**
+     * Drops every waiting task, for when the workers are shut down.
+     */
+    public static void dropAll() {
+        ArrayDeque<AsyncExecutor.AsyncTask> dropped = new ArrayDeque<>();
+        synchronized (FairScheduler.class) {
+            for (Flow flow : flows.values()) {
+                dropped.addAll(flow.waiting);
+                flow.waiting.clear();
+            }
+            flows.values().removeIf(flow -> flow.running == 0);
+            totalWaiting = 0;
+        }
+        for (AsyncExecutor.AsyncTask task : dropped) {
+            task.drop();
+        }
+    }
+
+    private static boolean hasCommand(Flow flow, String command) {
+        for (AsyncExecutor.AsyncTask task : flow.waiting) {
+            if (task.command.equals(command)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static synchronized int getWaiting(String flowKey) {
+        Flow flow = flows.get(flowKey);
+        return flow == null ? 0 : flow.waiting.size();
+    }
+
+    public static synchronized int getRunning(String flowKey) {
+        Flow flow = flows.get(flowKey);
+        return flow == null ? 0 : flow.running;
+    }
+
+    public static synchronized int getTotalWaiting() {
+        return totalWaiting;
+    }
+
+    public static synchronized int getTotalRunning() {
+        return totalRunning;
+    }
+}
@@ -0,0 +1,86 @@
+package org.darwin.denizenAdditions.utilities;
+
+import com.denizenscript.denizencore.objects.ObjectTag;
+import com.denizenscript.denizencore.objects.core.MapTag;
+import com.denizenscript.denizencore.scripts.ScriptEntry;
+import com.denizenscript.denizencore.tags.TagContext;
+import com.denizenscript.denizencore.utilities.CoreUtilities;
+import com.denizenscript.denizencore.utilities.text.StringHolder;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * A mechanism (or mechanism map) applied to every object of a command run.
+ * The steps (lower-cased names, and thread-safety for unique and non-unique objects) are compiled once per script entry and reused by every run,
+ * as long as the entry keeps adjusting the same mechanisms. Only the values, and the one tag context shared by all applies, are bound per run.
+ * Applying a step still builds a Mechanism per object, and Denizen still looks its handler up by name each time:
+ * a Mechanism is mutable (it records whether it was fulfilled), and handlers are registered per object type, so neither can be shared across objects.
+ */
+public class MechanismPlan {
+
+    public static class Step {
+
+        public final String name;
+        private final boolean asyncSafeUnique;
+        private final boolean asyncSafeNonUnique;
+
+        public Step(String name) {
+            this.name = CoreUtilities.toLowerCase(name);
+            this.asyncSafeUnique = MechanismSafety.isAsyncSafe(this.name, true);
+            this.asyncSafeNonUnique = MechanismSafety.isAsyncSafe(this.name, false);
+        }
+
+        public boolean isAsyncSafe(boolean unique) {
+            return unique ? asyncSafeUnique : asyncSafeNonUnique;
+        }
+    }
+
+    private static final Map<Object, Step[]> compiled = Collections.synchronizedMap(new WeakHashMap<>());
+
+    public final Step[] steps;
+
+    public final ObjectTag[] values;
+
+    public final TagContext context;
+
+    private MechanismPlan(Step[] steps, ObjectTag[] values, TagContext context) {
+        this.steps = steps;
+        this.values = values;
+        this.context = context;
+    }
+
+    public static MechanismPlan forEntry(ScriptEntry entry, MapTag mechanismMap) {
+        Step[] steps = compiled.get(entry.internal);
+        ObjectTag[] values = new ObjectTag[mechanismMap.size()];
+        StringHolder[] names = new StringHolder[values.length];
+        boolean matches = steps != null && steps.length == values.length;
+        int i = 0;
+        for (Map.Entry<StringHolder, ObjectTag> mapEntry : mechanismMap.entrySet()) {
+            if (matches && !steps[i].name.equals(mapEntry.getKey().low)) {
+                matches = false;
+            }
+            names[i] = mapEntry.getKey();
+            values[i++] = mapEntry.getValue();
+        }
+        if (!matches) {
+            steps = new Step[values.length];
+            for (i = 0; i < steps.length; i++) {
+                steps[i] = new Step(names[i].str);
+            }
+            compiled.put(entry.internal, steps);
+        }
+        return new MechanismPlan(steps, values, entry.entryData.getTagContext());
+    }
+
+    public static MechanismPlan forEntry(ScriptEntry entry, String mechanism, ObjectTag value) {
+        Step[] steps = compiled.get(entry.internal);
+        String name = CoreUtilities.toLowerCase(mechanism);
+        if (steps == null || steps.length != 1 || !steps[0].name.equals(name)) {
+            steps = new Step[] { new Step(name) };
+            compiled.put(entry.internal, steps);
+        }
+        return new MechanismPlan(steps, new ObjectTag[] { value }, entry.entryData.getTagContext());
+    }
+}
@@ -0,0 +1,72 @@
+package org.darwin.denizenAdditions.utilities;
+
+import com.denizenscript.denizencore.objects.ObjectTag;
+import com.denizenscript.denizencore.objects.properties.PropertyParser;
+import com.denizenscript.denizencore.utilities.CoreUtilities;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Decides whether a mechanism may be applied off the main thread.
+ * Mechanisms on non-unique objects (items, maps, locations, ...) only change the object copy being adjusted, so they're async-safe by default.
+ * Mechanisms on unique objects (entities, players, worlds, ...) touch live server state, so they're main-only by default.
+ * Unknown mechanism names are treated as main-only. The config can override any mechanism either way.
+ */
+public class MechanismSafety {
+
+    public enum Safety { ASYNC_SAFE, MAIN_ONLY }
+
+    private static Map<String, Safety> overrides = new HashMap<>();
+
+    private static volatile Set<String> knownMechanisms;
+
+    public static void load(ConfigurationSection config) {
+        Map<String, Safety> newOverrides = new HashMap<>();
+        if (config != null) {
+            for (String mechanism : config.getStringList("async_safe")) {
+                newOverrides.put(CoreUtilities.toLowerCase(mechanism), Safety.ASYNC_SAFE);
+            }
+            for (String mechanism : config.getStringList("main_only")) {
+                newOverrides.put(CoreUtilities.toLowerCase(mechanism), Safety.MAIN_ONLY);
+            }
+        }
+        overrides = newOverrides;
+        knownMechanisms = null;
+    }
+
+    private static Set<String> knownMechanisms() {
+        Set<String> known = knownMechanisms;
+        if (known == null) {
+            // Filled lazily, so mechanisms registered by plugins that load after us are included.
+            known = new HashSet<>();
+            for (String mechanism : PropertyParser.allMechanismsEver) {
+                known.add(CoreUtilities.toLowerCase(mechanism));
+            }
+            knownMechanisms = known;
+        }
+        return known;
+    }
+
+    public static Safety getSafety(String mechanism, boolean unique) {
+        Safety override = overrides.get(mechanism);
+        if (override != null) {
+            return override;
+        }
+        if (unique || !knownMechanisms().contains(mechanism)) {
+            return Safety.MAIN_ONLY;
+        }
+        return Safety.ASYNC_SAFE;
+    }
+
+    public static boolean isAsyncSafe(String mechanism, boolean unique) {
+        return getSafety(mechanism, unique) == Safety.ASYNC_SAFE;
+    }
+
+    public static boolean isAsyncSafe(ObjectTag object, String mechanism) {
+        return isAsyncSafe(mechanism, object.isUnique());
+    }
+}
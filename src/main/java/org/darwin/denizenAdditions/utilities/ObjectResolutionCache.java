@@ -0,0 +1,116 @@
+package org.darwin.denizenAdditions.utilities;
+
+import com.denizenscript.denizen.events.bukkit.ScriptReloadEvent;
+import com.denizenscript.denizen.objects.EntityTag;
+import com.denizenscript.denizen.objects.PlayerTag;
+import com.denizenscript.denizencore.objects.ObjectFetcher;
+import com.denizenscript.denizencore.objects.ObjectTag;
+import com.denizenscript.denizencore.objects.core.ElementTag;
+import com.denizenscript.denizencore.objects.core.ListTag;
+import com.denizenscript.denizencore.tags.TagContext;
+import org.bukkit.entity.Entity;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded, thread-safe cache of object notation to parsed object, used in place of ObjectFetcher.pickObjectFor.
+ * Non-unique objects are stored as prototypes and returned as is: callers must duplicate them before changing them (async_adjust always does).
+ * Unique objects are only cached for players and entities, and entities are checked to still be valid on every hit.
+ */
+public class ObjectResolutionCache {
+
+    private record Cached(ObjectTag object, boolean unique) {
+    }
+
+    public static int maxSize = 4096;
+
+    private static final ConcurrentHashMap<String, Cached> cache = new ConcurrentHashMap<>();
+
+    private static final ConcurrentLinkedQueue<String> insertionOrder = new ConcurrentLinkedQueue<>();
+
+    private static final LongAdder hits = new LongAdder(), misses = new LongAdder(), evictions = new LongAdder();
+
+    public static ObjectTag pick(String notation, TagContext context) {
+        Cached cached = cache.get(notation);
+        if (cached != null) {
+            if (!cached.unique) {
+                hits.increment();
+                return cached.object;
+            }
+            if (isStillValid(cached.object)) {
+                hits.increment();
+                return cached.object;
+            }
+            cache.remove(notation, cached);
+        }
+        misses.increment();
+        ObjectTag result = ObjectFetcher.pickObjectFor(notation, context);
+        if (result == null || result instanceof ElementTag || result instanceof ListTag || maxSize <= 0) {
+            return result;
+        }
+        boolean unique = result.isUnique();
+        if (unique && !isStillValid(result)) {
+            return result;
+        }
+        if (cache.put(notation, new Cached(result, unique)) == null) {
+            insertionOrder.add(notation);
+        }
+        while (cache.size() > maxSize) {
+            String oldest = insertionOrder.poll();
+            if (oldest == null) {
+                break;
+            }
+            if (cache.remove(oldest) != null) {
+                evictions.increment();
+            }
+        }
+        return result;
+    }
+
+    private static boolean isStillValid(ObjectTag object) {
+        if (object instanceof PlayerTag) {
+            return true;
+        }
+        if (object instanceof EntityTag entity) {
+            Entity bukkitEntity = entity.getBukkitEntity();
+            return bukkitEntity != null && bukkitEntity.isValid();
+        }
+        return false;
+    }
+
+    /**
+     * Forgets everything on script reload, as cached objects (like script items) may have been built from the old scripts.
+     */
+    public static class ReloadListener implements Listener {
+
+        @EventHandler
+        public void onScriptReload(ScriptReloadEvent event) {
+            clear();
+        }
+    }
+
+    public static void clear() {
+        cache.clear();
+        insertionOrder.clear();
+    }
+
+    public static int size() {
+        return cache.size();
+    }
+
+    public static long getHits() {
+        return hits.sum();
+    }
+
+    public static long getMisses() {
+        return misses.sum();
+    }
+
+    public static long getEvictions() {
+        return evictions.sum();
+    }
+}
@@ -0,0 +1,151 @@
+package org.darwin.denizenAdditions.utilities;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * LRU + TTL cache of resolved tracks (title, final url, or failure), for plasmotrack.
+ * Failures are cached too, for a shorter time, so a broken url isn't resolved again on every request.
+ * Concurrent requests for the same url share one in-flight resolve instead of starting their own.
+ */
+public class TrackCache {
+
+    /**
+     * A resolved track. 'expiresAt' is when the result stops being valid wherever it came from (such as the store), regardless of the cache's own TTL.
+     */
+    public record Resolved(String title, String uri, boolean failed, long expiresAt) {
+
+        public Resolved(String title, String uri, boolean failed) {
+            this(title, uri, failed, Long.MAX_VALUE);
+        }
+    }
+
+    private record Cached(Resolved resolved, long expiresAt) {
+    }
+
+    private static int maxSize = 512;
+
+    private static long ttlMillis = 600_000;
+
+    private static long failureTtlMillis = 30_000;
+
+    private static final LinkedHashMap<String, Cached> cache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Cached> eldest) {
+            if (size() > maxSize) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    private static final ConcurrentHashMap<String, CompletableFuture<Resolved>> inFlight = new ConcurrentHashMap<>();
+
+    private static final LongAdder hits = new LongAdder(), misses = new LongAdder(), joined = new LongAdder(), evictions = new LongAdder();
+
+    public static void configure(ConfigurationSection config) {
+        if (config == null) {
+            return;
+        }
+        synchronized (cache) {
+            maxSize = Math.max(0, config.getInt("cache_size", maxSize));
+            ttlMillis = Math.max(0, config.getLong("cache_ttl_seconds", ttlMillis / 1000)) * 1000;
+            failureTtlMillis = Math.max(0, config.getLong("failure_ttl_seconds", failureTtlMillis / 1000)) * 1000;
+            cache.clear();
+        }
+    }
+
+    private static Resolved lookup(String url) {
+        synchronized (cache) {
+            Cached cached = cache.get(url);
+            if (cached != null) {
+                if (cached.expiresAt > System.currentTimeMillis()) {
+                    hits.increment();
+                    return cached.resolved;
+                }
+                cache.remove(url);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the cached result for the url, joins the resolve already running for it, or starts one with 'loader'.
+     * The returned future never completes exceptionally: errors become a failed result.
+     */
+    public static CompletableFuture<Resolved> resolve(String url, Function<String, CompletableFuture<Resolved>> loader) {
+        Resolved cached = lookup(url);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        CompletableFuture<Resolved> created = new CompletableFuture<>();
+        CompletableFuture<Resolved> existing = inFlight.putIfAbsent(url, created);
+        if (existing != null) {
+            joined.increment();
+            return existing;
+        }
+        // A resolve may have finished between the lookup and claiming the url, in which case its result is cached by now.
+        cached = lookup(url);
+        if (cached != null) {
+            inFlight.remove(url, created);
+            created.complete(cached);
+            return created;
+        }
+        misses.increment();
+        CompletableFuture<Resolved> source;
+        try {
+            source = loader.apply(url);
+        }
+        catch (Throwable ex) {
+            source = CompletableFuture.failedFuture(ex);
+        }
+        source.whenComplete((resolved, error) -> {
+            Resolved result = error != null || resolved == null ? new Resolved(null, url, true) : resolved;
+            long now = System.currentTimeMillis();
+            long ttl = result.failed ? failureTtlMillis : ttlMillis;
+            long expiresAt = Math.min(now + ttl, result.expiresAt);
+            if (expiresAt > now) {
+                synchronized (cache) {
+                    cache.put(url, new Cached(result, expiresAt));
+                }
+            }
+            // Only stop sharing once the result is cached, so later requests find one or the other.
+            inFlight.remove(url, created);
+            created.complete(result);
+        });
+        return created;
+    }
+
+    public static int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    public static int getInFlight() {
+        return inFlight.size();
+    }
+
+    public static long getHits() {
+        return hits.sum();
+    }
+
+    public static long getMisses() {
+        return misses.sum();
+    }
+
+    public static long getJoined() {
+        return joined.sum();
+    }
+
+    public static long getEvictions() {
+        return evictions.sum();
+    }
+}
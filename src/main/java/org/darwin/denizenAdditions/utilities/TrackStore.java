@@ -0,0 +1,304 @@
+package org.darwin.denizenAdditions.utilities;
+
+import com.denizenscript.denizencore.utilities.debugging.Debug;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Append-only file of resolved tracks, so plasmotrack results survive restarts.
+ * Each record is [int length][byte failed][long resolved at][string url][string title][string uri], strings being [int byte count (-1 for null)][UTF-8 bytes].
+ * The file is only read the first time it's needed, in one plain read (a memory map would stop the file from being truncated or replaced
+ * on Windows for as long as the map isn't garbage collected), with later records for a url replacing earlier ones.
+ * A partly written last record (from a crash) is cut off. Once the file holds much more records than live entries, it's rewritten with only the live ones.
+ * All file work and the in-memory index belong to one background thread, so callers never touch the disk.
+ */
+public class TrackStore {
+
+    private record Stored(String title, String uri, boolean failed, long resolvedAt) {
+    }
+
+    private static final int MIN_COMPACT_RECORDS = 1024;
+
+    private static ExecutorService thread;
+
+    private static Path path;
+
+    private static long ttlMillis = 7 * 24 * 3_600_000L;
+
+    private static long failureTtlMillis = 30_000;
+
+    private static volatile Map<String, Stored> entries;
+
+    private static FileChannel appendChannel;
+
+    private static int recordCount = 0;
+
+    // Replaced by the unit tests, which run without Denizen.
+    static Consumer<String> reportError = message -> Debug.echoError(message);
+
+    public static void start(File dataFolder, ConfigurationSection config) {
+        stop();
+        if (config != null) {
+            if (!config.getBoolean("store.enabled", true)) {
+                return;
+            }
+            ttlMillis = Math.max(0, config.getLong("store.ttl_hours", ttlMillis / 3_600_000L)) * 3_600_000L;
+            failureTtlMillis = Math.max(0, config.getLong("failure_ttl_seconds", failureTtlMillis / 1000)) * 1000;
+        }
+        path = new File(dataFolder, "tracks.db").toPath();
+        thread = Executors.newSingleThreadExecutor(runnable -> {
+            Thread newThread = new Thread(runnable, "DenizenAdditions-TrackStore");
+            newThread.setDaemon(true);
+            return newThread;
+        });
+    }
+
+    public static void stop() {
+        if (thread == null) {
+            return;
+        }
+        ExecutorService oldThread = thread;
+        thread = null;
+        oldThread.execute(TrackStore::closeChannel);
+        oldThread.shutdown();
+        try {
+            oldThread.awaitTermination(5, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException ignored) {
+            Thread.currentThread().interrupt();
+        }
+        entries = null;
+    }
+
+    /**
+     * Looks the url up in the store, completing with null if it isn't stored (or has expired, or the store is disabled).
+     */
+    public static CompletableFuture<TrackCache.Resolved> lookup(String url) {
+        ExecutorService executor = thread;
+        if (executor == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<TrackCache.Resolved> result = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    load();
+                    Stored stored = entries.get(url);
+                    result.complete(stored == null || isExpired(stored, System.currentTimeMillis()) ? null
+                            : new TrackCache.Resolved(stored.title, stored.uri, stored.failed, expiresAt(stored)));
+                }
+                catch (Throwable ex) {
+                    result.complete(null);
+                }
+            });
+        }
+        catch (Exception ex) {
+            result.complete(null);
+        }
+        return result;
+    }
+
+    /**
+     * Appends a freshly resolved track to the store, in the background.
+     */
+    public static void record(String url, TrackCache.Resolved resolved) {
+        ExecutorService executor = thread;
+        if (executor == null) {
+            return;
+        }
+        Stored stored = new Stored(resolved.title(), resolved.uri(), resolved.failed(), System.currentTimeMillis());
+        try {
+            executor.execute(() -> {
+                try {
+                    load();
+                    entries.put(url, stored);
+                    openChannel().write(encode(url, stored));
+                    recordCount++;
+                    if (recordCount >= MIN_COMPACT_RECORDS && recordCount > entries.size() * 2) {
+                        compact();
+                    }
+                }
+                catch (IOException ex) {
+                    reportError.accept("Failed to write to the track store: " + ex);
+                }
+            });
+        }
+        catch (Exception ignored) {
+            // The store is shutting down.
+        }
+    }
+
+    private static boolean isExpired(Stored stored, long now) {
+        return now > expiresAt(stored);
+    }
+
+    private static long expiresAt(Stored stored) {
+        return stored.resolvedAt + (stored.failed ? failureTtlMillis : ttlMillis);
+    }
+
+    private static void load() throws IOException {
+        if (entries != null) {
+            return;
+        }
+        entries = new HashMap<>();
+        recordCount = 0;
+        if (!Files.exists(path)) {
+            return;
+        }
+        long validLength = 0;
+        long size;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            size = channel.size();
+            if (size == 0) {
+                return;
+            }
+            if (size > Integer.MAX_VALUE - 8) {
+                throw new IOException("Track store is too large to load");
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    break;
+                }
+            }
+            buffer.flip();
+            try {
+                while (buffer.remaining() >= 4) {
+                    int length = buffer.getInt();
+                    if (length <= 0 || length > buffer.remaining()) {
+                        break;
+                    }
+                    ByteBuffer record = buffer.slice(buffer.position(), length);
+                    buffer.position(buffer.position() + length);
+                    boolean failed = record.get() != 0;
+                    long resolvedAt = record.getLong();
+                    String url = readString(record);
+                    String title = readString(record);
+                    String uri = readString(record);
+                    if (url == null) {
+                        break;
+                    }
+                    entries.put(url, new Stored(title, uri, failed, resolvedAt));
+                    recordCount++;
+                    validLength = buffer.position();
+                }
+            }
+            catch (BufferUnderflowException | IllegalArgumentException ex) {
+                // Corrupt record: keep everything before it.
+            }
+        }
+        if (validLength < size) {
+            reportError.accept("Track store had " + (size - validLength) + " unreadable bytes at its end, removed them.");
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                channel.truncate(validLength);
+            }
+        }
+        long now = System.currentTimeMillis();
+        entries.values().removeIf(stored -> isExpired(stored, now));
+        if (recordCount >= MIN_COMPACT_RECORDS && recordCount > entries.size() * 2) {
+            compact();
+        }
+    }
+
+    private static void compact() throws IOException {
+        long now = System.currentTimeMillis();
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        int written = 0;
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            Iterator<Map.Entry<String, Stored>> iterator = entries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, Stored> entry = iterator.next();
+                if (isExpired(entry.getValue(), now)) {
+                    iterator.remove();
+                    continue;
+                }
+                channel.write(encode(entry.getKey(), entry.getValue()));
+                written++;
+            }
+            channel.force(true);
+        }
+        closeChannel();
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        recordCount = written;
+    }
+
+    private static FileChannel openChannel() throws IOException {
+        if (appendChannel == null) {
+            Files.createDirectories(path.getParent());
+            appendChannel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        return appendChannel;
+    }
+
+    private static void closeChannel() {
+        if (appendChannel != null) {
+            try {
+                appendChannel.close();
+            }
+            catch (IOException ignored) {
+            }
+            appendChannel = null;
+        }
+    }
+
+    private static ByteBuffer encode(String url, Stored stored) {
+        byte[] urlBytes = url.getBytes(StandardCharsets.UTF_8);
+        byte[] titleBytes = stored.title == null ? null : stored.title.getBytes(StandardCharsets.UTF_8);
+        byte[] uriBytes = stored.uri == null ? null : stored.uri.getBytes(StandardCharsets.UTF_8);
+        int length = 1 + 8 + stringSize(urlBytes) + stringSize(titleBytes) + stringSize(uriBytes);
+        ByteBuffer buffer = ByteBuffer.allocate(4 + length);
+        buffer.putInt(length);
+        buffer.put((byte) (stored.failed ? 1 : 0));
+        buffer.putLong(stored.resolvedAt);
+        writeString(buffer, urlBytes);
+        writeString(buffer, titleBytes);
+        writeString(buffer, uriBytes);
+        return buffer.flip();
+    }
+
+    private static int stringSize(byte[] bytes) {
+        return 4 + (bytes == null ? 0 : bytes.length);
+    }
+
+    private static void writeString(ByteBuffer buffer, byte[] bytes) {
+        if (bytes == null) {
+            buffer.putInt(-1);
+            return;
+        }
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public static int size() {
+        Map<String, Stored> current = entries;
+        return current == null ? 0 : current.size();
+    }
+}
@@ -0,0 +1,62 @@
+package org.darwin.denizenAdditions.tags;
+
+import org.darwin.denizenAdditions.utilities.ChunkedCipher;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryTagEncryptTest {
+
+    private static final byte[] DATA = "some player data, long enough to span more than one AES block".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * BinaryTag.encrypt's format, written out independently: AES/ECB with the first 16 bytes of the key's SHA-256.
+     */
+    private static byte[] legacyEncrypt(byte[] data, String key) throws Exception {
+        byte[] hash = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+        Cipher cipher = Cipher.getInstance("AES/ECB/PKCS5Padding");
+        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(Arrays.copyOf(hash, 16), "AES"));
+        return cipher.doFinal(data);
+    }
+
+    @Test
+    void legacyFormatIsUnchanged() throws Exception {
+        assertArrayEquals(legacyEncrypt(DATA, "key"), BinaryTagEncrypt.encrypt(DATA, "key"));
+        assertArrayEquals(DATA, BinaryTagEncrypt.decrypt(legacyEncrypt(DATA, "key"), "key"));
+    }
+
+    @Test
+    void reusedCryptoFollowsKeyChanges() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            for (String key : new String[] {"first", "second", "first"}) {
+                assertArrayEquals(legacyEncrypt(DATA, key), BinaryTagEncrypt.encrypt(DATA, key));
+                assertArrayEquals(DATA, BinaryTagEncrypt.decrypt(BinaryTagEncrypt.encrypt(DATA, key), key));
+            }
+        }
+    }
+
+    @Test
+    void failedDecryptDoesNotBreakTheNextOne() throws Exception {
+        byte[] encrypted = BinaryTagEncrypt.encrypt(DATA, "key");
+        assertThrows(GeneralSecurityException.class, () -> BinaryTagEncrypt.decrypt(encrypted, "wrong key"));
+        assertThrows(GeneralSecurityException.class, () -> BinaryTagEncrypt.decrypt(Arrays.copyOf(encrypted, 5), "key"));
+        assertArrayEquals(DATA, BinaryTagEncrypt.decrypt(encrypted, "key"));
+    }
+
+    @Test
+    void decryptChunkedReadsBothFormats() throws Exception {
+        byte[] legacy = legacyEncrypt(DATA, "key");
+        assertFalse(ChunkedCipher.isChunked(legacy));
+        assertArrayEquals(DATA, BinaryTagEncrypt.decryptChunked(legacy, "key"));
+        byte[] chunked = ChunkedCipher.encrypt(DATA, BinaryTagEncrypt.deriveKey("key"), ChunkedCipher.MIN_CHUNK_SIZE);
+        assertArrayEquals(DATA, BinaryTagEncrypt.decryptChunked(chunked, "key"));
+        assertThrows(GeneralSecurityException.class, () -> BinaryTagEncrypt.decryptChunked(chunked, "wrong key"));
+    }
+}
@@ -0,0 +1,199 @@
+package org.darwin.denizenAdditions.utilities;
+
+import com.denizenscript.denizencore.objects.ObjectTag;
+import com.denizenscript.denizencore.objects.core.ElementTag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AsyncChannelTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    @Test
+    void capacityIsRoundedUpToAPowerOfTwo() {
+        assertEquals(2, AsyncChannel.get("capacity_two", 2).capacity());
+        assertEquals(4, AsyncChannel.get("capacity_three", 3).capacity());
+        assertEquals(256, AsyncChannel.get("capacity_256", 256).capacity());
+    }
+
+    @Test
+    void namesAreCaseInsensitive() {
+        AsyncChannel channel = AsyncChannel.get("Named_Channel", 4);
+        assertSame(channel, AsyncChannel.get("named_channel", 4));
+        assertSame(channel, AsyncChannel.find("NAMED_CHANNEL"));
+    }
+
+    @Test
+    void itemsComeOutInOrder() {
+        AsyncChannel channel = AsyncChannel.get("order", 8);
+        for (int i = 0; i < 8; i++) {
+            assertTrue(channel.offer(new ElementTag(i)));
+        }
+        assertFalse(channel.offer(new ElementTag(8)), "a full channel must refuse offers");
+        assertEquals(8, channel.size());
+        for (int i = 0; i < 8; i++) {
+            assertEquals(String.valueOf(i), channel.poll().toString());
+        }
+        assertNull(channel.poll());
+        assertEquals(0, channel.size());
+    }
+
+    @Test
+    void closedChannelDrainsThenIsDone() {
+        AsyncChannel channel = AsyncChannel.get("close", 4);
+        channel.offer(new ElementTag("last"));
+        channel.close();
+        assertTrue(channel.isClosed());
+        assertFalse(channel.offer(new ElementTag("late")));
+        assertFalse(channel.put(new ElementTag("late"), SECOND));
+        assertFalse(channel.isDone());
+        assertEquals("last", channel.take(SECOND).toString());
+        assertTrue(channel.isDone());
+        long start = System.nanoTime();
+        assertNull(channel.take(10 * SECOND));
+        assertTrue(System.nanoTime() - start < SECOND, "a receive on a done channel must not wait");
+        channel.forget();
+        assertNull(AsyncChannel.find("close"));
+    }
+
+    @Test
+    void takeWaitsUpToTheTimeout() {
+        AsyncChannel channel = AsyncChannel.get("timeout", 4);
+        long start = System.nanoTime();
+        assertNull(channel.take(50_000_000L));
+        assertTrue(System.nanoTime() - start >= 50_000_000L);
+    }
+
+    @Test
+    void zeroTimeoutDoesNotWait() {
+        AsyncChannel channel = AsyncChannel.get("no_wait", 2);
+        assertNull(channel.take(0));
+        channel.offer(new ElementTag(1));
+        channel.offer(new ElementTag(2));
+        assertFalse(channel.put(new ElementTag(3), 0));
+    }
+
+    @Test
+    void closeWakesParkedReceivers() throws Exception {
+        AsyncChannel channel = AsyncChannel.get("close_wakes", 4);
+        AtomicReference<ObjectTag> received = new AtomicReference<>(new ElementTag("unset"));
+        Thread receiver = new Thread(() -> received.set(channel.take(30 * SECOND)));
+        receiver.start();
+        Thread.sleep(50);
+        channel.close();
+        receiver.join(5000);
+        assertFalse(receiver.isAlive());
+        assertNull(received.get());
+    }
+
+    @Test
+    void putAndTakeAcrossThreads() throws Exception {
+        AsyncChannel channel = AsyncChannel.get("pipeline", 4);
+        int count = 20_000;
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < count; i++) {
+                assertTrue(channel.put(new ElementTag(i), 10 * SECOND));
+            }
+            channel.close();
+        });
+        producer.start();
+        List<String> received = new ArrayList<>();
+        ObjectTag item;
+        while ((item = channel.take(10 * SECOND)) != null) {
+            received.add(item.toString());
+        }
+        producer.join(5000);
+        assertEquals(count, received.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(String.valueOf(i), received.get(i));
+        }
+    }
+
+    @Test
+    void manyProducersAndConsumersLoseNothing() throws Exception {
+        AsyncChannel channel = AsyncChannel.get("many", 16);
+        int producers = 4, consumers = 4, perProducer = 5_000;
+        AtomicInteger sum = new AtomicInteger(), received = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            threads.add(new Thread(() -> {
+                for (int i = 1; i <= perProducer; i++) {
+                    assertTrue(channel.put(new ElementTag(i), 10 * SECOND));
+                }
+            }));
+        }
+        for (int c = 0; c < consumers; c++) {
+            threads.add(new Thread(() -> {
+                ObjectTag item;
+                while ((item = channel.take(10 * SECOND)) != null) {
+                    sum.addAndGet(Integer.parseInt(item.toString()));
+                    received.incrementAndGet();
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads.subList(0, producers)) {
+            thread.join(10_000);
+        }
+        channel.close();
+        for (Thread thread : threads.subList(producers, threads.size())) {
+            thread.join(10_000);
+        }
+        assertEquals(producers * perProducer, received.get());
+        assertEquals(producers * (perProducer * (perProducer + 1) / 2), sum.get());
+    }
+
+    @Test
+    void receiveLaterRunsOnTheNextDrain() {
+        AsyncChannel channel = AsyncChannel.get("later", 4);
+        CompletionQueue.drain();
+        List<ObjectTag> received = new ArrayList<>();
+        channel.receiveLater(received::add);
+        assertTrue(received.isEmpty());
+        channel.offer(new ElementTag("hello"));
+        assertTrue(received.isEmpty(), "the callback must wait for the main thread's drain");
+        CompletionQueue.drain();
+        assertEquals(1, received.size());
+        assertEquals("hello", received.get(0).toString());
+        channel.offer(new ElementTag("again"));
+        CompletionQueue.drain();
+        assertEquals(1, received.size(), "a receive must only ever get one item");
+        assertEquals("again", channel.poll().toString());
+    }
+
+    @Test
+    void cancelledReceiveLaterNeverRuns() {
+        AsyncChannel channel = AsyncChannel.get("cancel", 4);
+        CompletionQueue.drain();
+        List<ObjectTag> received = new ArrayList<>();
+        assertTrue(channel.receiveLater(received::add).getAsBoolean());
+        channel.offer(new ElementTag("kept"));
+        CompletionQueue.drain();
+        assertTrue(received.isEmpty());
+        assertEquals("kept", channel.poll().toString());
+    }
+
+    @Test
+    void sendLaterWaitsForRoom() {
+        AsyncChannel channel = AsyncChannel.get("send_later", 2);
+        CompletionQueue.drain();
+        channel.offer(new ElementTag(1));
+        channel.offer(new ElementTag(2));
+        List<Boolean> results = new ArrayList<>();
+        channel.sendLater(new ElementTag(3), results::add);
+        assertTrue(results.isEmpty());
+        channel.poll();
+        CompletionQueue.drain();
+        assertEquals(List.of(true), results);
+        assertEquals("2", channel.poll().toString());
+        assertEquals("3", channel.poll().toString());
+    }
+}
@@ -0,0 +1,133 @@
+package org.darwin.denizenAdditions.utilities;
+
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChunkedCipherTest {
+
+    private static final SecretKeySpec KEY = new SecretKeySpec(new byte[16], "AES");
+
+    private static final SecretKeySpec OTHER_KEY = new SecretKeySpec(new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16}, "AES");
+
+    private static final int CHUNK = ChunkedCipher.MIN_CHUNK_SIZE;
+
+    private static byte[] random(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+
+    @Test
+    void roundTripsEverySize() throws Exception {
+        // Empty, within one chunk, on chunk boundaries, and large enough to be split across the fork/join pool.
+        for (int size : new int[] {0, 1, CHUNK - 1, CHUNK, CHUNK + 1, 5 * CHUNK + 7, 3 * 1024 * 1024 + 11}) {
+            byte[] data = random(size);
+            byte[] encrypted = ChunkedCipher.encrypt(data, KEY, CHUNK);
+            long chunks = Math.max(1, (size + CHUNK - 1) / CHUNK);
+            assertEquals(ChunkedCipher.HEADER_SIZE + size + chunks * ChunkedCipher.TAG_SIZE, encrypted.length);
+            assertTrue(ChunkedCipher.isChunked(encrypted));
+            assertArrayEquals(data, ChunkedCipher.decrypt(encrypted, KEY), "size " + size);
+        }
+    }
+
+    @Test
+    void sameDataEncryptsDifferentlyEachTime() throws Exception {
+        byte[] data = random(100);
+        assertFalse(Arrays.equals(ChunkedCipher.encrypt(data, KEY, CHUNK), ChunkedCipher.encrypt(data, KEY, CHUNK)));
+    }
+
+    @Test
+    void chunkSizeIsClamped() throws Exception {
+        byte[] encrypted = ChunkedCipher.encrypt(random(10), KEY, 1);
+        assertEquals(CHUNK, ChunkedCipher.Header.read(ByteBuffer.wrap(encrypted)).chunkSize);
+    }
+
+    @Test
+    void wrongKeyFails() throws Exception {
+        byte[] encrypted = ChunkedCipher.encrypt(random(3000), KEY, CHUNK);
+        assertThrows(AEADBadTagException.class, () -> ChunkedCipher.decrypt(encrypted, OTHER_KEY));
+    }
+
+    @Test
+    void everyTamperedByteFails() throws Exception {
+        byte[] encrypted = ChunkedCipher.encrypt(random(2 * CHUNK + 100), KEY, CHUNK);
+        for (int i = 0; i < encrypted.length; i += 37) {
+            byte[] tampered = encrypted.clone();
+            tampered[i] ^= 1;
+            assertThrows(GeneralSecurityException.class, () -> ChunkedCipher.decrypt(tampered, KEY), "byte " + i);
+        }
+    }
+
+    @Test
+    void everyTruncationFails() throws Exception {
+        byte[] encrypted = ChunkedCipher.encrypt(random(2 * CHUNK + 100), KEY, CHUNK);
+        for (int cut = 1; cut < encrypted.length - ChunkedCipher.HEADER_SIZE; cut++) {
+            byte[] truncated = Arrays.copyOf(encrypted, encrypted.length - cut);
+            assertThrows(AEADBadTagException.class, () -> ChunkedCipher.decrypt(truncated, KEY), "cut " + cut);
+        }
+    }
+
+    @Test
+    void droppedLastChunkFails() throws Exception {
+        byte[] encrypted = ChunkedCipher.encrypt(random(3 * CHUNK), KEY, CHUNK);
+        int chunk = CHUNK + ChunkedCipher.TAG_SIZE;
+        byte[] dropped = Arrays.copyOf(encrypted, ChunkedCipher.HEADER_SIZE + 2 * chunk);
+        assertThrows(AEADBadTagException.class, () -> ChunkedCipher.decrypt(dropped, KEY));
+    }
+
+    @Test
+    void swappedChunksFail() throws Exception {
+        byte[] encrypted = ChunkedCipher.encrypt(random(3 * CHUNK), KEY, CHUNK);
+        int chunk = CHUNK + ChunkedCipher.TAG_SIZE;
+        byte[] swapped = encrypted.clone();
+        System.arraycopy(encrypted, ChunkedCipher.HEADER_SIZE, swapped, ChunkedCipher.HEADER_SIZE + chunk, chunk);
+        System.arraycopy(encrypted, ChunkedCipher.HEADER_SIZE + chunk, swapped, ChunkedCipher.HEADER_SIZE, chunk);
+        assertThrows(AEADBadTagException.class, () -> ChunkedCipher.decrypt(swapped, KEY));
+    }
+
+    @Test
+    void chunksFromAnotherMessageFail() throws Exception {
+        byte[] first = ChunkedCipher.encrypt(random(2 * CHUNK), KEY, CHUNK);
+        byte[] second = ChunkedCipher.encrypt(random(2 * CHUNK), KEY, CHUNK);
+        byte[] mixed = first.clone();
+        System.arraycopy(second, ChunkedCipher.HEADER_SIZE, mixed, ChunkedCipher.HEADER_SIZE, CHUNK + ChunkedCipher.TAG_SIZE);
+        assertThrows(AEADBadTagException.class, () -> ChunkedCipher.decrypt(mixed, KEY));
+    }
+
+    @Test
+    void unknownVersionFails() throws Exception {
+        byte[] encrypted = ChunkedCipher.encrypt(random(10), KEY, CHUNK);
+        encrypted[4] = 99;
+        GeneralSecurityException ex = assertThrows(GeneralSecurityException.class, () -> ChunkedCipher.decrypt(encrypted, KEY));
+        assertTrue(ex.getMessage().contains("version"));
+    }
+
+    @Test
+    void otherDataIsNotChunked() {
+        assertFalse(ChunkedCipher.isChunked(new byte[0]));
+        assertFalse(ChunkedCipher.isChunked(random(100)));
+        assertThrows(GeneralSecurityException.class, () -> ChunkedCipher.decrypt(random(100), KEY));
+    }
+
+    @Test
+    void streamedChunksMatchInMemoryFormat() throws Exception {
+        byte[] data = random(2 * CHUNK + 5);
+        ChunkedCipher.Header header = ChunkedCipher.Header.create(CHUNK);
+        ByteBuffer output = ByteBuffer.allocate(ChunkedCipher.HEADER_SIZE + data.length + 3 * ChunkedCipher.TAG_SIZE);
+        output.put(header.bytes);
+        for (int i = 0; i < 3; i++) {
+            int offset = i * CHUNK;
+            ByteBuffer input = ByteBuffer.wrap(data, offset, Math.min(CHUNK, data.length - offset));
+            header.encryptChunk(KEY, i, i == 2, input, output);
+        }
+        assertArrayEquals(data, ChunkedCipher.decrypt(output.array(), KEY));
+    }
+}
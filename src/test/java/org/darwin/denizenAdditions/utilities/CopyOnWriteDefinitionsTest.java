@@ -0,0 +1,117 @@
+package org.darwin.denizenAdditions.utilities;
+
+import com.denizenscript.denizencore.objects.ObjectTag;
+import com.denizenscript.denizencore.objects.core.ElementTag;
+import com.denizenscript.denizencore.objects.core.MapTag;
+import com.denizenscript.denizencore.utilities.text.StringHolder;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CopyOnWriteDefinitionsTest {
+
+    private static MapTag definitions(String... pairs) {
+        MapTag map = new MapTag();
+        for (int i = 0; i < pairs.length; i += 2) {
+            map.putObject(pairs[i], new ElementTag(pairs[i + 1]));
+        }
+        return map;
+    }
+
+    private static String get(MapTag map, String key) {
+        ObjectTag value = map.getObject(key);
+        return value == null ? null : value.toString();
+    }
+
+    @Test
+    void targetSeesTheSourceDefinitions() {
+        MapTag source = definitions("a", "1", "b", "2");
+        MapTag target = new MapTag();
+        CopyOnWriteDefinitions.shareInto(source, target);
+        assertEquals("1", get(target, "a"));
+        assertEquals("2", get(target, "b"));
+        assertEquals(2, target.map.size());
+        assertInstanceOf(CopyOnWriteDefinitions.class, source.map);
+        assertInstanceOf(CopyOnWriteDefinitions.class, target.map);
+    }
+
+    @Test
+    void writesStayOnTheirOwnSide() {
+        MapTag source = definitions("a", "1");
+        MapTag target = new MapTag();
+        CopyOnWriteDefinitions.shareInto(source, target);
+        target.putObject("a", new ElementTag("target"));
+        target.putObject("c", new ElementTag("3"));
+        source.putObject("b", new ElementTag("source"));
+        assertEquals("1", get(source, "a"));
+        assertEquals("source", get(source, "b"));
+        assertNull(get(source, "c"));
+        assertEquals("target", get(target, "a"));
+        assertNull(get(target, "b"));
+        assertEquals("3", get(target, "c"));
+    }
+
+    @Test
+    void removesStayOnTheirOwnSide() {
+        MapTag source = definitions("a", "1", "b", "2");
+        MapTag target = new MapTag();
+        CopyOnWriteDefinitions.shareInto(source, target);
+        target.map.remove(new StringHolder("a"));
+        assertNull(target.map.remove(new StringHolder("missing")));
+        assertNull(get(target, "a"));
+        assertEquals("1", get(source, "a"));
+        source.map.clear();
+        assertTrue(source.map.isEmpty());
+        assertEquals("2", get(target, "b"));
+    }
+
+    @Test
+    void snapshotNeverChanges() {
+        MapTag source = definitions("a", "1");
+        MapTag first = new MapTag();
+        Map<StringHolder, ObjectTag> snapshot = CopyOnWriteDefinitions.shareInto(source, first);
+        ObjectTag original = snapshot.get(new StringHolder("a"));
+        first.putObject("a", new ElementTag("changed"));
+        source.putObject("a", new ElementTag("also changed"));
+        source.putObject("new", new ElementTag("x"));
+        assertSame(original, snapshot.get(new StringHolder("a")));
+        assertEquals(1, snapshot.size());
+        // Sharing again hands out the source's current state, without touching the earlier snapshot.
+        MapTag second = new MapTag();
+        Map<StringHolder, ObjectTag> later = CopyOnWriteDefinitions.shareInto(source, second);
+        assertNotSame(snapshot, later);
+        assertEquals("also changed", get(second, "a"));
+        assertEquals("x", get(second, "new"));
+        assertSame(original, snapshot.get(new StringHolder("a")));
+    }
+
+    @Test
+    void sharingIntoANonEmptyTargetMergesIntoIt() {
+        MapTag source = definitions("a", "1", "b", "2");
+        MapTag target = definitions("b", "own", "c", "3");
+        CopyOnWriteDefinitions.shareInto(source, target);
+        assertEquals("1", get(target, "a"));
+        assertEquals("2", get(target, "b"));
+        assertEquals("3", get(target, "c"));
+        target.putObject("a", new ElementTag("target"));
+        assertEquals("1", get(source, "a"));
+    }
+
+    @Test
+    void manyTargetsShareOneSource() {
+        MapTag source = definitions("a", "1");
+        MapTag[] targets = new MapTag[8];
+        for (int i = 0; i < targets.length; i++) {
+            targets[i] = new MapTag();
+            CopyOnWriteDefinitions.shareInto(source, targets[i]);
+            targets[i].putObject("i", new ElementTag(i));
+        }
+        for (int i = 0; i < targets.length; i++) {
+            assertEquals("1", get(targets[i], "a"));
+            assertEquals(String.valueOf(i), get(targets[i], "i"));
+        }
+        assertNull(get(source, "i"));
+    }
+}
@@ -0,0 +1,160 @@
+package org.darwin.denizenAdditions.utilities;
+
+import org.bukkit.configuration.MemoryConfiguration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FairSchedulerTest {
+
+    @AfterEach
+    void shutdown() {
+        AsyncExecutor.shutdown();
+    }
+
+    private static void configure(int poolSize, int queueSize, String... settings) {
+        MemoryConfiguration config = new MemoryConfiguration();
+        config.set("pool_size", poolSize);
+        config.set("queue_size", queueSize);
+        for (int i = 0; i < settings.length; i += 2) {
+            String value = settings[i + 1];
+            config.set("fair." + settings[i], value.contains(".") ? (Object) Double.parseDouble(value) : (Object) Integer.parseInt(value));
+        }
+        AsyncExecutor.configure(config);
+    }
+
+    private static AsyncExecutor.AsyncTask task(Runnable runnable) {
+        return new AsyncExecutor.AsyncTask("test", runnable, null);
+    }
+
+    /**
+     * Occupies every worker until the returned latch is released, so tasks offered meanwhile all wait in their flows.
+     */
+    private static CountDownLatch blockWorkers(int workers) throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(workers);
+        for (int i = 0; i < workers; i++) {
+            assertTrue(FairScheduler.offer("blocker", task(() -> {
+                started.countDown();
+                await(release);
+            })));
+        }
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        return release;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+        }
+        catch (InterruptedException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    private static List<String> runInOrder(String[] flows, int perFlow) throws InterruptedException {
+        CountDownLatch release = blockWorkers(1);
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(flows.length * perFlow);
+        for (String flow : flows) {
+            for (int i = 0; i < perFlow; i++) {
+                assertTrue(FairScheduler.offer(flow, task(() -> {
+                    order.add(flow);
+                    done.countDown();
+                })));
+            }
+        }
+        assertEquals(flows.length * perFlow, FairScheduler.getTotalWaiting());
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        return order;
+    }
+
+    @Test
+    void flowsTakeTurns() throws Exception {
+        configure(1, 1024);
+        List<String> order = runInOrder(new String[] {"first", "second"}, 20);
+        int first = 0, second = 0;
+        for (String flow : order) {
+            if (flow.equals("first")) {
+                first++;
+            }
+            else {
+                second++;
+            }
+            assertTrue(Math.abs(first - second) <= 1, "one flow got ahead of the other: " + order);
+        }
+    }
+
+    @Test
+    void heavierFlowsGetMoreTurns() throws Exception {
+        configure(1, 1024, "scripts.heavy.weight", "3");
+        List<String> order = runInOrder(new String[] {"heavy", "light"}, 20);
+        long heavyInFirstEight = order.subList(0, 8).stream().filter("heavy"::equals).count();
+        assertTrue(heavyInFirstEight >= 5 && heavyInFirstEight <= 7, "expected about 3 heavy turns per light one: " + order);
+    }
+
+    @Test
+    void flowLimitCapsConcurrency() throws Exception {
+        configure(4, 1024, "scripts.limited.limit", "1");
+        AtomicInteger running = new AtomicInteger(), maxRunning = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(8);
+        for (int i = 0; i < 8; i++) {
+            assertTrue(FairScheduler.offer("limited", task(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(10);
+                }
+                catch (InterruptedException ignored) {
+                }
+                running.decrementAndGet();
+                done.countDown();
+            })));
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(1, maxRunning.get());
+    }
+
+    @Test
+    void refusesTasksBeyondTheQueueSize() throws Exception {
+        configure(1, 2);
+        CountDownLatch release = blockWorkers(1);
+        assertTrue(FairScheduler.offer("flow", task(() -> {})));
+        assertTrue(FairScheduler.offer("flow", task(() -> {})));
+        assertFalse(FairScheduler.offer("flow", task(() -> {})));
+        assertEquals(2, FairScheduler.getWaiting("flow"));
+        release.countDown();
+    }
+
+    @Test
+    void dropOldestRemovesFromTheLargestFlow() throws Exception {
+        configure(1, 1024);
+        CountDownLatch release = blockWorkers(1);
+        List<String> ran = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger dropped = new AtomicInteger();
+        for (int i = 0; i < 3; i++) {
+            String name = "big" + i;
+            FairScheduler.offer("big", new AsyncExecutor.AsyncTask("test", () -> ran.add(name), dropped::incrementAndGet));
+        }
+        FairScheduler.offer("small", new AsyncExecutor.AsyncTask("test", () -> ran.add("small"), dropped::incrementAndGet));
+        assertTrue(FairScheduler.dropOldest(null));
+        assertEquals(1, dropped.get());
+        assertEquals(2, FairScheduler.getWaiting("big"));
+        assertEquals(1, FairScheduler.getWaiting("small"));
+        release.countDown();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (ran.size() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertFalse(ran.contains("big0"));
+        assertTrue(ran.containsAll(List.of("big1", "big2", "small")));
+    }
+}
@@ -0,0 +1,126 @@
+package org.darwin.denizenAdditions.utilities;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrackCacheTest {
+
+    @Test
+    void concurrentRequestsShareOneResolve() throws Exception {
+        String url = "https://example.com/shared";
+        AtomicInteger loads = new AtomicInteger();
+        CompletableFuture<TrackCache.Resolved> source = new CompletableFuture<>();
+        int threads = 16;
+        CountDownLatch ready = new CountDownLatch(threads), go = new CountDownLatch(1);
+        List<CompletableFuture<TrackCache.Resolved>> results = new ArrayList<>();
+        List<Thread> started = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Thread thread = new Thread(() -> {
+                ready.countDown();
+                try {
+                    go.await();
+                }
+                catch (InterruptedException ignored) {
+                }
+                CompletableFuture<TrackCache.Resolved> result = TrackCache.resolve(url, key -> {
+                    loads.incrementAndGet();
+                    return source;
+                });
+                synchronized (results) {
+                    results.add(result);
+                }
+            });
+            thread.start();
+            started.add(thread);
+        }
+        assertTrue(ready.await(5, TimeUnit.SECONDS));
+        go.countDown();
+        for (Thread thread : started) {
+            thread.join(5000);
+        }
+        assertEquals(1, loads.get());
+        assertEquals(threads, results.size());
+        for (CompletableFuture<TrackCache.Resolved> result : results) {
+            assertFalse(result.isDone());
+        }
+        source.complete(new TrackCache.Resolved("Title", url, false));
+        for (CompletableFuture<TrackCache.Resolved> result : results) {
+            assertEquals("Title", result.get(5, TimeUnit.SECONDS).title());
+        }
+    }
+
+    @Test
+    void finishedResolvesAreCached() {
+        String url = "https://example.com/cached";
+        AtomicInteger loads = new AtomicInteger();
+        long hits = TrackCache.getHits();
+        TrackCache.Resolved first = TrackCache.resolve(url, key -> {
+            loads.incrementAndGet();
+            return CompletableFuture.completedFuture(new TrackCache.Resolved("Cached", key, false));
+        }).join();
+        TrackCache.Resolved second = TrackCache.resolve(url, key -> {
+            loads.incrementAndGet();
+            return CompletableFuture.completedFuture(new TrackCache.Resolved("Reloaded", key, false));
+        }).join();
+        assertEquals(1, loads.get());
+        assertSame(first, second);
+        assertEquals(hits + 1, TrackCache.getHits());
+    }
+
+    @Test
+    void errorsBecomeFailedResults() {
+        String url = "https://example.com/broken";
+        TrackCache.Resolved thrown = TrackCache.resolve(url, key -> {
+            throw new IllegalStateException("loader broke");
+        }).join();
+        assertTrue(thrown.failed());
+        assertEquals(url, thrown.uri());
+        TrackCache.Resolved failed = TrackCache.resolve(url + "/2", key -> CompletableFuture.failedFuture(new RuntimeException("lookup failed"))).join();
+        assertTrue(failed.failed());
+        TrackCache.Resolved missing = TrackCache.resolve(url + "/3", key -> CompletableFuture.completedFuture(null)).join();
+        assertTrue(missing.failed());
+    }
+
+    @Test
+    void expiredSourceResultsAreNotCached() {
+        String url = "https://example.com/expired";
+        AtomicInteger loads = new AtomicInteger();
+        for (int i = 0; i < 2; i++) {
+            TrackCache.resolve(url, key -> {
+                loads.incrementAndGet();
+                return CompletableFuture.completedFuture(new TrackCache.Resolved("Old", key, false, System.currentTimeMillis() - 1));
+            }).join();
+        }
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void cacheTtlIsCappedAtTheSourceExpiry() throws Exception {
+        String url = "https://example.com/expiring";
+        AtomicInteger loads = new AtomicInteger();
+        long expiresAt = System.currentTimeMillis() + 100;
+        TrackCache.resolve(url, key -> {
+            loads.incrementAndGet();
+            return CompletableFuture.completedFuture(new TrackCache.Resolved("Soon", key, false, expiresAt));
+        }).join();
+        TrackCache.resolve(url, key -> {
+            loads.incrementAndGet();
+            return CompletableFuture.completedFuture(new TrackCache.Resolved("Soon", key, false));
+        }).join();
+        assertEquals(1, loads.get());
+        Thread.sleep(150);
+        TrackCache.resolve(url, key -> {
+            loads.incrementAndGet();
+            return CompletableFuture.completedFuture(new TrackCache.Resolved("Fresh", key, false));
+        }).join();
+        assertEquals(2, loads.get());
+    }
+}
@@ -0,0 +1,128 @@
+package org.darwin.denizenAdditions.utilities;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrackStoreTest {
+
+    @TempDir
+    File folder;
+
+    private final List<String> errors = new ArrayList<>();
+
+    private Path file() {
+        return folder.toPath().resolve("tracks.db");
+    }
+
+    @BeforeEach
+    void start() {
+        TrackStore.reportError = errors::add;
+        TrackStore.start(folder, null);
+    }
+
+    @AfterEach
+    void stop() {
+        TrackStore.stop();
+    }
+
+    private static void restart(File folder) {
+        TrackStore.stop();
+        TrackStore.start(folder, null);
+    }
+
+    @Test
+    void recordsSurviveARestart() throws Exception {
+        TrackStore.record("https://example.com/a", new TrackCache.Resolved("Song A", "https://cdn.example.com/a", false));
+        TrackStore.record("https://example.com/b", new TrackCache.Resolved(null, "https://example.com/b", true));
+        restart(folder);
+        TrackCache.Resolved a = TrackStore.lookup("https://example.com/a").get();
+        assertEquals("Song A", a.title());
+        assertEquals("https://cdn.example.com/a", a.uri());
+        assertFalse(a.failed());
+        assertTrue(a.expiresAt() > System.currentTimeMillis());
+        TrackCache.Resolved b = TrackStore.lookup("https://example.com/b").get();
+        assertNull(b.title());
+        assertTrue(b.failed());
+        assertNull(TrackStore.lookup("https://example.com/missing").get());
+        assertTrue(errors.isEmpty());
+    }
+
+    @Test
+    void laterRecordsReplaceEarlierOnes() throws Exception {
+        TrackStore.record("url", new TrackCache.Resolved("old", "uri", false));
+        TrackStore.record("url", new TrackCache.Resolved("new", "uri", false));
+        restart(folder);
+        assertEquals("new", TrackStore.lookup("url").get().title());
+        assertEquals(1, TrackStore.size());
+    }
+
+    @Test
+    void tornTailIsCutOff() throws Exception {
+        TrackStore.record("kept", new TrackCache.Resolved("Kept", "uri", false));
+        TrackStore.stop();
+        long validSize = Files.size(file());
+        // A record header promising more bytes than were written, as after a crash mid-append.
+        Files.write(file(), new byte[] {0, 0, 0, 100, 0, 1, 2}, StandardOpenOption.APPEND);
+        TrackStore.start(folder, null);
+        assertEquals("Kept", TrackStore.lookup("kept").get().title());
+        assertEquals(validSize, Files.size(file()));
+        assertEquals(1, errors.size());
+        TrackStore.record("after", new TrackCache.Resolved("After", "uri", false));
+        restart(folder);
+        assertEquals("Kept", TrackStore.lookup("kept").get().title());
+        assertEquals("After", TrackStore.lookup("after").get().title());
+        assertEquals(1, errors.size());
+    }
+
+    @Test
+    void garbageRecordIsCutOff() throws Exception {
+        TrackStore.record("kept", new TrackCache.Resolved("Kept", "uri", false));
+        TrackStore.stop();
+        long validSize = Files.size(file());
+        // A complete length, but the strings inside don't fit in it.
+        Files.write(file(), new byte[] {0, 0, 0, 13, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 99}, StandardOpenOption.APPEND);
+        TrackStore.start(folder, null);
+        assertEquals("Kept", TrackStore.lookup("kept").get().title());
+        assertEquals(validSize, Files.size(file()));
+    }
+
+    @Test
+    void compactsOnceMostRecordsAreStale() throws Exception {
+        TrackStore.record("url", new TrackCache.Resolved("title 0", "uri", false));
+        TrackStore.stop();
+        long oneRecord = Files.size(file());
+        TrackStore.start(folder, null);
+        for (int i = 1; i < 1024; i++) {
+            TrackStore.record("url", new TrackCache.Resolved("title " + i, "uri", false));
+        }
+        restart(folder);
+        assertEquals("title 1023", TrackStore.lookup("url").get().title());
+        // Compacted down to the one live record (titles up to "title 1023" are at most 3 bytes longer than "title 0").
+        assertTrue(Files.size(file()) <= oneRecord + 3, "store wasn't compacted: " + Files.size(file()) + " bytes");
+        assertFalse(Files.exists(folder.toPath().resolve("tracks.db.tmp")));
+        TrackStore.record("other", new TrackCache.Resolved("Other", "uri", false));
+        restart(folder);
+        assertEquals("title 1023", TrackStore.lookup("url").get().title());
+        assertEquals("Other", TrackStore.lookup("other").get().title());
+        assertTrue(errors.isEmpty());
+    }
+
+    @Test
+    void disabledStoreFindsNothing() throws Exception {
+        TrackStore.stop();
+        assertNull(TrackStore.lookup("url").get());
+        TrackStore.record("url", new TrackCache.Resolved("title", "uri", false));
+        assertFalse(Files.exists(file()));
+    }
+}